@@ -0,0 +1,37 @@
+package com.dtc.common.zk.bind;
+
+import java.io.Serializable;
+
+/**
+ * {@link DtcForm} 中某個有異動的 field，包含異動前後的值。
+ */
+public class DirtyField implements Serializable {
+	private static final long serialVersionUID = -2830186043337407155L;
+	
+	private final String name;
+	private final Object oldValue;
+	private final Object newValue;
+	
+	public DirtyField(String name, Object oldValue, Object newValue) {
+		this.name = name;
+		this.oldValue = oldValue;
+		this.newValue = newValue;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public Object getOldValue() {
+		return oldValue;
+	}
+	
+	public Object getNewValue() {
+		return newValue;
+	}
+	
+	@Override
+	public String toString() {
+		return name + ": " + oldValue + " -> " + newValue;
+	}
+}
@@ -1,6 +1,11 @@
 package com.dtc.common.zk.bind;
 
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -18,9 +23,16 @@ import org.zkoss.lang.Objects;
  * 原先 ZK 的設計中，middle object 的 class 是固定的，
  * 如果 middle object 要改變 class，就會導致 form binding 出錯。
  * 所以提供 {@link #clear()}，在 middle object 改變 class 時呼叫。
+ * <p>
+ * 另外提供 {@link #getDirtyFields()} 與 {@link #getLastDirtyFields()}，
+ * 讓存檔時可以知道實際異動了哪些 field。
+ * <p>
+ * 序列化時使用 {@link Externalizable}：所有 field 名稱只寫一次成為名稱表，
+ * 各個 collection 只寫名稱表的 index，讀回時名稱會 {@link String#intern()}。
+ * <p>
  * 其餘邏輯以及程式碼都是直接複製 {@link FormImpl}。
  */
-public class DtcForm implements Form,FormExt,Serializable {
+public class DtcForm implements Form,FormExt,Externalizable {
 	private static final long serialVersionUID = 1463169907348730644L;
 	
 	private final Set<String> _saveFieldNames; //field name for saving
@@ -28,7 +40,9 @@ public class DtcForm implements Form,FormExt,Serializable {
 	private final Map<String, Object> _fields; //field series -> value
 	private final Map<String, Object> _initFields; //field series -> value
 	private final Set<String> _dirtyFieldNames; //field name that is dirty
+	private Map<String, DirtyField> _lastDirtyFields; //dirty fields before last resetDirty()
 	private static final int INIT_CAPACITY = 32;
+	private static final int EXTERNAL_VERSION = 1;
 	
 	private final FormStatus _status;
 	
@@ -38,6 +52,7 @@ public class DtcForm implements Form,FormExt,Serializable {
 		_saveFieldNames = new LinkedHashSet<String>(INIT_CAPACITY);
 		_loadFieldNames = new LinkedHashSet<String>(INIT_CAPACITY);
 		_dirtyFieldNames = new HashSet<String>(INIT_CAPACITY);
+		_lastDirtyFields = Collections.emptyMap();
 		_status = new FormStatusImpl();
 	}
 	
@@ -55,6 +70,7 @@ public class DtcForm implements Form,FormExt,Serializable {
 		_fields.clear();
 		_initFields.clear();
 		_dirtyFieldNames.clear();
+		_lastDirtyFields = Collections.emptyMap();
 	}
 	
 	@Override
@@ -70,6 +86,7 @@ public class DtcForm implements Form,FormExt,Serializable {
 	
 	@Override
 	public void resetDirty() {
+		_lastDirtyFields = getDirtyFields();
 		_initFields.putAll(_fields);
 		_dirtyFieldNames.clear();
 	}
@@ -99,6 +116,48 @@ public class DtcForm implements Form,FormExt,Serializable {
 		return !_dirtyFieldNames.isEmpty();
 	}
 	
+	/**
+	 * @return 目前有異動的 field 名稱（唯讀）
+	 */
+	public Set<String> getDirtyFieldNames() {
+		return Collections.unmodifiableSet(_dirtyFieldNames);
+	}
+	
+	/**
+	 * @return field 在最近一次 load 時的值
+	 */
+	public Object getInitField(String field) {
+		return _initFields.get(field);
+	}
+	
+	/**
+	 * @return 目前有異動的 field，key 值為 field 名稱
+	 */
+	public Map<String, DirtyField> getDirtyFields() {
+		if (_dirtyFieldNames.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		
+		LinkedHashMap<String, DirtyField> result = new LinkedHashMap<String, DirtyField>();
+		for (String field : _fields.keySet()) {	//依照 field 順序
+			if (_dirtyFieldNames.contains(field)) {
+				result.put(field, new DirtyField(field, _initFields.get(field), _fields.get(field)));
+			}
+		}
+		return Collections.unmodifiableMap(result);
+	}
+	
+	/**
+	 * form binding 在 save 完之後會呼叫 {@link #resetDirty()}，
+	 * 所以在 <code>@save(vm.currentData, before='save')</code> 的 command 當中，
+	 * {@link #getDirtyFields()} 已經是空的，必須改用這個 method 取得剛剛存回 bean 的 field。
+	 * 
+	 * @return 最近一次 {@link #resetDirty()} 之前有異動的 field
+	 */
+	public Map<String, DirtyField> getLastDirtyFields() {
+		return _lastDirtyFields;
+	}
+	
 	@Override
 	public void addLoadFieldName(String fieldName) {
 		_loadFieldNames.add(fieldName);
@@ -113,4 +172,103 @@ public class DtcForm implements Form,FormExt,Serializable {
 	public FormStatus getStatus() {
 		return _status;
 	}
+	
+	// ======== Externalizable ======== //
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		LinkedHashMap<String, Integer> names = new LinkedHashMap<String, Integer>();
+		intern(names, _saveFieldNames);
+		intern(names, _loadFieldNames);
+		intern(names, _fields.keySet());
+		intern(names, _initFields.keySet());
+		intern(names, _dirtyFieldNames);
+		intern(names, _lastDirtyFields.keySet());
+		
+		out.writeByte(EXTERNAL_VERSION);
+		out.writeInt(names.size());
+		for (String name : names.keySet()) {
+			out.writeUTF(name);
+		}
+		
+		writeNames(out, names, _saveFieldNames);
+		writeNames(out, names, _loadFieldNames);
+		writeNames(out, names, _dirtyFieldNames);
+		writeValues(out, names, _fields);
+		writeValues(out, names, _initFields);
+		
+		out.writeInt(_lastDirtyFields.size());
+		for (DirtyField field : _lastDirtyFields.values()) {
+			out.writeInt(names.get(field.getName()));
+			out.writeObject(field.getOldValue());
+			out.writeObject(field.getNewValue());
+		}
+	}
+	
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		int version = in.readByte();
+		if (version != EXTERNAL_VERSION) {
+			throw new IOException("不支援的 DtcForm 序列化版本：" + version);
+		}
+		
+		clear();
+		String[] names = new String[in.readInt()];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = in.readUTF().intern();
+		}
+		
+		readNames(in, names, _saveFieldNames);
+		readNames(in, names, _loadFieldNames);
+		readNames(in, names, _dirtyFieldNames);
+		readValues(in, names, _fields);
+		readValues(in, names, _initFields);
+		
+		int size = in.readInt();
+		if (size > 0) {
+			LinkedHashMap<String, DirtyField> lastDirtyFields = new LinkedHashMap<String, DirtyField>();
+			for (int i = 0; i < size; i++) {
+				String name = names[in.readInt()];
+				lastDirtyFields.put(name, new DirtyField(name, in.readObject(), in.readObject()));
+			}
+			_lastDirtyFields = Collections.unmodifiableMap(lastDirtyFields);
+		}
+	}
+	
+	private static void intern(Map<String, Integer> names, Set<String> fields) {
+		for (String field : fields) {
+			if (!names.containsKey(field)) {
+				names.put(field, names.size());
+			}
+		}
+	}
+	
+	private static void writeNames(ObjectOutput out, Map<String, Integer> names, Set<String> fields) throws IOException {
+		out.writeInt(fields.size());
+		for (String field : fields) {
+			out.writeInt(names.get(field));
+		}
+	}
+	
+	private static void readNames(ObjectInput in, String[] names, Set<String> fields) throws IOException {
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			fields.add(names[in.readInt()]);
+		}
+	}
+	
+	private static void writeValues(ObjectOutput out, Map<String, Integer> names, Map<String, Object> fields) throws IOException {
+		out.writeInt(fields.size());
+		for (Map.Entry<String, Object> entry : fields.entrySet()) {
+			out.writeInt(names.get(entry.getKey()));
+			out.writeObject(entry.getValue());
+		}
+	}
+	
+	private static void readValues(ObjectInput in, String[] names, Map<String, Object> fields) throws IOException, ClassNotFoundException {
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			String name = names[in.readInt()];
+			fields.put(name, in.readObject());
+		}
+	}
 }
@@ -2,15 +2,23 @@ package com.dtc.common.zk.converter;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.zkoss.bind.BindContext;
 import org.zkoss.bind.Converter;
 import org.zkoss.zk.ui.Component;
 
+import com.dtc.common.zk.util.ReferenceDataRegistry;
+import com.dtc.common.zk.util.ReferenceDataSnapshot;
+import com.dtc.common.zk.util.ReferenceDataSnapshot.KeyExtractor;
+
 /**
  * 提供單一 entity、透過 {@link #setDataStore(List)} 設定比對的資料集，
  * 來轉換某兩個 field / getter 的 convert 基礎架構。
  * <p>
+ * 如果比對的資料集是各頁面共用的代碼表，改用 {@link #setDataSource(String)}
+ * 指定 {@link ReferenceDataRegistry} 中的參照資料，就不會每個 converter 各自複製一份。
+ * <p>
  * <b>注意：</b>
  * <ul>
  * 	<li>{@link #getBeanValue(Object)} 與 {@link #getUiValue(Object)} 的值在 data store 當中都必須具備唯一性 </li>
@@ -24,6 +32,21 @@ import org.zkoss.zk.ui.Component;
  */
 public abstract class BaseConverter<E, U, B> implements Converter<U, B, Component> {
 	private ArrayList<E> dataStore = new ArrayList<E>();
+	private String dataSource;
+	
+	private final KeyExtractor<E> beanKey = new KeyExtractor<E>() {
+		@Override
+		public Object getKey(E data) {
+			return getBeanValue(data);
+		}
+	};
+	
+	private final KeyExtractor<E> uiKey = new KeyExtractor<E>() {
+		@Override
+		public Object getKey(E data) {
+			return getUiValue(data);
+		}
+	};
 	
 	/**
 	 * @return bean 對應到 entity 的 field / getter 值
@@ -39,14 +62,29 @@ public abstract class BaseConverter<E, U, B> implements Converter<U, B, Componen
 	 * 設定 convert 所比對的資料集
 	 */
 	public void setDataStore(List<E> dataStore) {
+		this.dataSource = null;
 		this.dataStore.clear();
 		this.dataStore.addAll(dataStore);
 	}
 	
+	/**
+	 * 改用 {@link ReferenceDataRegistry} 中名為 name 的參照資料作為比對的資料集，
+	 * 每次 convert 都會使用該參照資料的最新版本。
+	 */
+	public void setDataSource(String name) {
+		this.dataSource = name;
+		this.dataStore.clear();
+	}
+	
 	@Override
 	public U coerceToUi(B beanProp, Component component, BindContext ctx) {
 		if (beanProp == null) { return null; }
 		
+		if (dataSource != null) {
+			E data = getIndex("bean", beanKey).get(beanProp);
+			return data == null ? null : getUiValue(data);
+		}
+		
 		for (E data : dataStore) {
 			if (getBeanValue(data).equals(beanProp)) {
 				return getUiValue(data);
@@ -60,6 +98,11 @@ public abstract class BaseConverter<E, U, B> implements Converter<U, B, Componen
 	public B coerceToBean(U compAttr, Component component, BindContext ctx) {
 		if (compAttr == null) { return null; }
 		
+		if (dataSource != null) {
+			E data = getIndex("ui", uiKey).get(compAttr);
+			return data == null ? null : getBeanValue(data);
+		}
+		
 		for (E data : dataStore) {
 			if (getUiValue(data).equals(compAttr)) {
 				return getBeanValue(data);
@@ -68,4 +111,12 @@ public abstract class BaseConverter<E, U, B> implements Converter<U, B, Componen
 		
 		return null;
 	}
+	
+	/**
+	 * 同一個 class 的 converter 共用同一份索引。
+	 */
+	private Map<Object, E> getIndex(String type, KeyExtractor<E> extractor) {
+		ReferenceDataSnapshot<E> snapshot = ReferenceDataRegistry.getSnapshot(dataSource);
+		return snapshot.index(getClass().getName() + "#" + type, extractor);
+	}
 }
\ No newline at end of file
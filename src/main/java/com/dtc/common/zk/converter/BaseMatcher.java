@@ -7,10 +7,17 @@ import org.zkoss.bind.BindContext;
 import org.zkoss.bind.Converter;
 import org.zkoss.zk.ui.Component;
 
+import com.dtc.common.zk.util.ReferenceDataRegistry;
+import com.dtc.common.zk.util.ReferenceDataSnapshot;
+import com.dtc.common.zk.util.ReferenceDataSnapshot.KeyExtractor;
+
 /**
  * 提供單一 entity、透過 {@link #setDataStore(List)} 設定比對的資料集，
  * 來轉換指定 field / getter 與 entity instance 的基礎架構。
  * <p>
+ * 如果比對的資料集是各頁面共用的代碼表，改用 {@link #setDataSource(String)}
+ * 指定 {@link ReferenceDataRegistry} 中的參照資料，就不會每個 matcher 各自複製一份。
+ * <p>
  * <b>注意：</b>
  * <ul>
  * 	<li>當 entity 的資料筆數很多，不建議用這個方式</li>
@@ -22,6 +29,14 @@ import org.zkoss.zk.ui.Component;
  */
 public abstract class BaseMatcher<E, U> implements Converter<U, E, Component> {
 	private ArrayList<E> dataStore = new ArrayList<E>();
+	private String dataSource;
+	
+	private final KeyExtractor<E> uiKey = new KeyExtractor<E>() {
+		@Override
+		public Object getKey(E data) {
+			return getUiValue(data);
+		}
+	};
 	
 	/**
 	 * @return UI 呈現的值對應到 entity 的 field / getter 值
@@ -32,9 +47,19 @@ public abstract class BaseMatcher<E, U> implements Converter<U, E, Component> {
 	 * 設定 macher 所比對的資料集
 	 */
 	public void setDataStore(List<E> dataStore) {
+		this.dataSource = null;
 		this.dataStore.clear();
 		this.dataStore.addAll(dataStore);
 	}
+	
+	/**
+	 * 改用 {@link ReferenceDataRegistry} 中名為 name 的參照資料作為比對的資料集，
+	 * 每次 convert 都會使用該參照資料的最新版本。
+	 */
+	public void setDataSource(String name) {
+		this.dataSource = name;
+		this.dataStore.clear();
+	}
 
 	@Override
 	public U coerceToUi(E beanProp, Component component, BindContext ctx) {
@@ -45,6 +70,11 @@ public abstract class BaseMatcher<E, U> implements Converter<U, E, Component> {
 	public E coerceToBean(U compAttr, Component component, BindContext ctx) {
 		if (compAttr == null) { return null; }
 		
+		if (dataSource != null) {
+			ReferenceDataSnapshot<E> snapshot = ReferenceDataRegistry.getSnapshot(dataSource);
+			return snapshot.index(getClass().getName() + "#ui", uiKey).get(compAttr);
+		}
+		
 		for (E data : dataStore) {
 			if (getUiValue(data).equals(compAttr)) {
 				return data;
@@ -0,0 +1,221 @@
+package com.dtc.common.zk.converter;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.zkoss.bind.BindContext;
+import org.zkoss.bind.Converter;
+import org.zkoss.util.Locales;
+import org.zkoss.util.TimeZones;
+import org.zkoss.zk.ui.Component;
+
+/**
+ * 將另一個 converter 的 coerceToUi 結果 cache 起來的 decorator，
+ * grid 重新 render 時同樣的值就不用再轉換一次。
+ * <p>
+ * cache 的 key 為 bean 值、converter 參數（例如 <code>format</code>、<code>limit</code>）、
+ * 目前的 locale 與 time zone。cache 有大小上限（以估計的 byte 數計算），超過時淘汰最久沒用到的結果。
+ * coerceToBean 不作 cache，直接交給原本的 converter。
+ * <p>
+ * 只適用於結果只取決於上述 key 的 converter。
+ * 例如 {@link BaseConverter} 在 {@link BaseConverter#setDataStore(java.util.List)} 之後必須呼叫 {@link #clear()}。
+ * <p>
+ * 不依賴任何 session 狀態的 converter（例如 {@link DicomDateToStringConverter}）
+ * 可以用 {@link #shared(String, Converter, long)} 讓所有 session 共用一份 cache：
+ * <pre>
+ * public Converter&lt;String, String, Component&gt; getDateConverter() {
+ * 	return CachingConverter.shared("dicomDate", DicomDateToStringConverter.INSTANCE, 1024 * 1024);
+ * }
+ * </pre>
+ * 
+ * @param <U> UI 顯示的資料型態
+ * @param <B> bean property 的資料型態
+ */
+public class CachingConverter<U, B> implements Converter<U, B, Component> {
+	public static final long DEFAULT_MAX_BYTES = 256 * 1024;
+	
+	private static final int SEGMENT_COUNT = 16;
+	private static final Object NULL = new Object();
+	private static final ConcurrentHashMap<String, CachingConverter<?, ?>> SHARED = 
+		new ConcurrentHashMap<String, CachingConverter<?, ?>>();
+	
+	private final Converter<U, B, Component> delegate;
+	private final Segment[] segments = new Segment[SEGMENT_COUNT];
+	private final AtomicLong hit = new AtomicLong();
+	private final AtomicLong miss = new AtomicLong();
+	
+	public CachingConverter(Converter<U, B, Component> delegate) {
+		this(delegate, DEFAULT_MAX_BYTES);
+	}
+	
+	/**
+	 * @param maxBytes cache 大小上限的估計 byte 數
+	 */
+	public CachingConverter(Converter<U, B, Component> delegate, long maxBytes) {
+		this.delegate = delegate;
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			segments[i] = new Segment(Math.max(1, maxBytes / SEGMENT_COUNT));
+		}
+	}
+	
+	/**
+	 * @return 名為 name、所有 session 共用的 {@link CachingConverter}，第一次呼叫時以 delegate 建立
+	 */
+	@SuppressWarnings("unchecked")
+	public static <U, B> CachingConverter<U, B> shared(String name, Converter<U, B, Component> delegate, long maxBytes) {
+		CachingConverter<?, ?> result = SHARED.get(name);
+		if (result == null) {
+			result = new CachingConverter<U, B>(delegate, maxBytes);
+			CachingConverter<?, ?> exist = SHARED.putIfAbsent(name, result);
+			if (exist != null) { result = exist; }
+		}
+		return (CachingConverter<U, B>)result;
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public U coerceToUi(B beanProp, Component component, BindContext ctx) {
+		if (beanProp == null) {
+			return delegate.coerceToUi(beanProp, component, ctx);
+		}
+		
+		Key key = new Key(beanProp, ctx == null ? null : ctx.getConverterArgs());
+		Segment segment = segments[(key.hashCode() & 0x7fffffff) % SEGMENT_COUNT];
+		Object result = segment.get(key);
+		if (result != null) {
+			hit.incrementAndGet();
+			return result == NULL ? null : (U)result;
+		}
+		
+		miss.incrementAndGet();
+		U value = delegate.coerceToUi(beanProp, component, ctx);
+		segment.put(key, value == null ? NULL : value);
+		return value;
+	}
+	
+	@Override
+	public B coerceToBean(U compAttr, Component component, BindContext ctx) {
+		return delegate.coerceToBean(compAttr, component, ctx);
+	}
+	
+	/**
+	 * 清除所有 cache，原本 converter 的轉換依據有變動時必須呼叫。
+	 */
+	public void clear() {
+		for (Segment segment : segments) {
+			segment.clear();
+		}
+	}
+	
+	public long getHitCount() {
+		return hit.get();
+	}
+	
+	public long getMissCount() {
+		return miss.get();
+	}
+	
+	/**
+	 * @return 目前 cache 的估計 byte 數
+	 */
+	public long getEstimatedBytes() {
+		long result = 0;
+		for (Segment segment : segments) {
+			result += segment.getBytes();
+		}
+		return result;
+	}
+	
+	/**
+	 * 粗略估計一筆 cache 佔用的 byte 數，字串以長度計算，其他一律視為固定大小。
+	 */
+	private static long estimate(Key key, Object value) {
+		return 64 + estimate(key.beanProp) + estimate(value) + (key.args == null ? 0 : key.args.size() * 32);
+	}
+	
+	private static long estimate(Object value) {
+		return value instanceof CharSequence ? 40 + ((CharSequence)value).length() * 2 : 16;
+	}
+	
+	/**
+	 * access order 的 LinkedHashMap，一個 segment 一把 lock。
+	 */
+	private static class Segment {
+		private final long maxBytes;
+		private final LinkedHashMap<Key, Object> map = new LinkedHashMap<Key, Object>(16, 0.75f, true);
+		private long bytes;
+		
+		Segment(long maxBytes) {
+			this.maxBytes = maxBytes;
+		}
+		
+		synchronized Object get(Key key) {
+			return map.get(key);
+		}
+		
+		synchronized void put(Key key, Object value) {
+			Object old = map.put(key, value);
+			if (old != null) {
+				bytes -= estimate(key, old);
+			}
+			bytes += estimate(key, value);
+			
+			while (bytes > maxBytes && map.size() > 1) {
+				Map.Entry<Key, Object> eldest = map.entrySet().iterator().next();
+				bytes -= estimate(eldest.getKey(), eldest.getValue());
+				map.remove(eldest.getKey());
+			}
+		}
+		
+		synchronized void clear() {
+			map.clear();
+			bytes = 0;
+		}
+		
+		synchronized long getBytes() {
+			return bytes;
+		}
+	}
+	
+	private static class Key {
+		private final Object beanProp;
+		private final Map<String, Object> args;
+		private final Locale locale;
+		private final TimeZone timeZone;
+		private final int hash;
+		
+		Key(Object beanProp, Map<String, Object> args) {
+			this.beanProp = beanProp;
+			this.args = args == null || args.isEmpty() ? null : new HashMap<String, Object>(args);
+			this.locale = Locales.getCurrent();
+			this.timeZone = TimeZones.getCurrent();
+			
+			int result = beanProp.hashCode();
+			result = result * 31 + (this.args == null ? 0 : this.args.hashCode());
+			result = result * 31 + (locale == null ? 0 : locale.hashCode());
+			result = result * 31 + (timeZone == null ? 0 : timeZone.getID().hashCode());
+			hash = result;
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) { return false; }
+			
+			Key other = (Key)obj;
+			return hash == other.hash && beanProp.equals(other.beanProp) &&
+				(args == null ? other.args == null : args.equals(other.args)) &&
+				(locale == null ? other.locale == null : locale.equals(other.locale)) &&
+				(timeZone == null ? other.timeZone == null : other.timeZone != null && timeZone.getID().equals(other.timeZone.getID()));
+		}
+	}
+}
@@ -2,6 +2,9 @@ package com.dtc.common.zk.converter;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
 
 import org.zkoss.bind.BindContext;
 import org.zkoss.bind.Converter;
@@ -32,6 +35,10 @@ import org.zkoss.zk.ui.Component;
  * 	<li>以字串的角度 VR.DT 包含 VR.DA，所以直接使用 VR.DT 的格式</li>
  * 	<li>VR.DT 的 UTC offset 不處理</li>
  * </ol>
+ * <p>
+ * DICOM 日期字串的字典順序就是時間順序，所以區間搜尋可以直接比較字串，
+ * {@link #toLowerBound(Object)} 與 {@link #toUpperBound(Object)} 提供區間的上下限，
+ * 例如 <code>20260101</code> 這一天為 <code>&gt;= '20260101' and &lt; '20260102'</code>。
  */
 public class DicomDateToStringConverter implements Converter<String, String, Component>{
 	public static final DicomDateToStringConverter INSTANCE = new DicomDateToStringConverter();
@@ -75,7 +82,68 @@ public class DicomDateToStringConverter implements Converter<String, String, Com
 		return result;
 	}
 
-	private static String fill(String beanProp) {
+	/**
+	 * @param value {@link Date}（取到日）或 DICOM 日期字串的前綴，前綴中非數字與「.」的字元會被忽略，
+	 * 	例如 <code>2026/01/01</code> 視為 <code>20260101</code>
+	 * @return 區間的下限（包含），也就是 value 的前綴本身
+	 */
+	public static String toLowerBound(Object value) {
+		if (value instanceof Date) {
+			SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd");
+			format.setTimeZone(TimeZones.getCurrent());
+			return format.format((Date)value);
+		}
+
+		return value.toString().replaceAll("[^0-9.]", "");
+	}
+
+	/**
+	 * @return 區間的上限（不包含）。依前綴的長度將年、月、日、時、分、秒加一，
+	 * 	例如 <code>202612</code> 為 <code>202701</code>；其他長度則將最後一個字元加一。
+	 * @see #toLowerBound(Object)
+	 */
+	public static String toUpperBound(Object value) {
+		String prefix = toLowerBound(value);
+		if (prefix.length() == 0) { return prefix; }
+
+		int field;
+		switch (prefix.length()) {
+		case 4: field = Calendar.YEAR; break;
+		case 6: field = Calendar.MONTH; break;
+		case 8: field = Calendar.DATE; break;
+		case 10: field = Calendar.HOUR_OF_DAY; break;
+		case 12: field = Calendar.MINUTE; break;
+		case 14: field = Calendar.SECOND; break;
+		default: field = -1;
+		}
+
+		if (field != -1) {
+			//字串之間的換算，跟時區無關，用 UTC 避免日光節約時間的影響
+			TimeZone utc = TimeZone.getTimeZone("UTC");
+			try {
+				SimpleDateFormat parser = new SimpleDateFormat(VR_DT_FORMAT);
+				parser.setLenient(false);
+				parser.setTimeZone(utc);
+				Calendar calendar = Calendar.getInstance(utc);
+				//月、日沒有 00，fill() 補 0 的話 non-lenient 會 parse 失敗，所以先補成 01
+				String date = field == Calendar.YEAR ? prefix + "0101" : field == Calendar.MONTH ? prefix + "01" : prefix;
+				calendar.setTime(parser.parse(fill(date)));
+				calendar.add(field, 1);
+				SimpleDateFormat formatter = new SimpleDateFormat(VR_DT_FORMAT.substring(0, prefix.length()));
+				formatter.setTimeZone(utc);
+				return formatter.format(calendar.getTime());
+			} catch (ParseException e) {}
+		}
+
+		//以字典順序來說，最後一個字元加一就會大於所有以 prefix 開頭的字串
+		char last = prefix.charAt(prefix.length() - 1);
+		return prefix.substring(0, prefix.length() - 1) + (char)(last + 1);
+	}
+
+	/**
+	 * 將長度不足的 DICOM 日期補上 0 跟「.」成為完整的 <code>yyyyMMddHHmmss.SSSSSS</code>。
+	 */
+	public static String fill(String beanProp) {
 		StringBuffer sb = new StringBuffer(VR_DT_FORMAT.length());
 		sb.append(beanProp);
 
@@ -1,19 +1,55 @@
 package com.dtc.common.zk.exception;
 
-import org.zkoss.util.resource.Labels;
+import com.dtc.common.zk.util.I18nMessages;
 
 /**
  * UI 操作時產生的自定義 exception 的 base class。
+ * <p>
+ * 這類 exception 是用來回報已知的狀況（流程控制），所以不會產生 stack trace，
+ * 訊息也是在 {@link #getMessage()} 時才會轉換成目前 locale 的文字。
  * @author MontyPan
  */
 public class UIException extends Exception {
 	private static final long serialVersionUID = 4637912036842340682L;
 	
+	private final String i18nKey;
+	private final String customMessage;
+	private final Object[] values;
+	
 	public UIException(String i18nKey, String customMessage) {
-		super(Labels.getLabel(i18nKey) + "\n" + customMessage);
+		this.i18nKey = i18nKey;
+		this.customMessage = customMessage;
+		this.values = null;
 	}
 	
 	public UIException(String i18nKey, String[] values) {
-		super(Labels.getLabel(i18nKey, values));
+		this.i18nKey = i18nKey;
+		this.customMessage = null;
+		this.values = values;
+	}
+	
+	/**
+	 * 給自行處理 {@link #getMessage()} 的 child class 使用。
+	 */
+	protected UIException() {
+		this(null, (String)null);
+	}
+	
+	@Override
+	public String getMessage() {
+		if (i18nKey == null) { return null; }
+		
+		if (values != null) {
+			return I18nMessages.get(i18nKey, values);
+		}
+		if (customMessage == null) {
+			return I18nMessages.get(i18nKey);
+		}
+		return I18nMessages.get(i18nKey) + "\n" + customMessage;
+	}
+	
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
 	}
-}
\ No newline at end of file
+}
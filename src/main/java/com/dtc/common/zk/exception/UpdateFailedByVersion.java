@@ -0,0 +1,13 @@
+package com.dtc.common.zk.exception;
+
+/**
+ * 存檔時資料已經被其他人修改或刪除的 exception。
+ * @author MontyPan
+ */
+public class UpdateFailedByVersion extends UIException {
+	private static final long serialVersionUID = 5240939146728123301L;
+	
+	public UpdateFailedByVersion() {
+		super("dtc.zk.error.update.version", (String)null);
+	}
+}
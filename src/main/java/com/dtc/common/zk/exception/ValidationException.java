@@ -0,0 +1,23 @@
+package com.dtc.common.zk.exception;
+
+/**
+ * 包含多個驗證錯誤的 exception，讓 doSave() / doDelete() 也能一次回報所有錯誤。
+ */
+public class ValidationException extends UIException {
+	private static final long serialVersionUID = 2071418373529014519L;
+	
+	private final ValidationResult result;
+	
+	public ValidationException(ValidationResult result) {
+		this.result = result;
+	}
+	
+	public ValidationResult getResult() {
+		return result;
+	}
+	
+	@Override
+	public String getMessage() {
+		return result.getMessage();
+	}
+}
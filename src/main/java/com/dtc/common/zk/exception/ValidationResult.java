@@ -0,0 +1,87 @@
+package com.dtc.common.zk.exception;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.dtc.common.zk.util.I18nMessages;
+
+/**
+ * 一次收集所有驗證錯誤，而不是遇到第一個錯誤就丟出 exception。
+ * 錯誤訊息在 {@link #getMessage()} 時才會轉換成文字。
+ * 
+ * @see com.dtc.common.zk.viewmodel.BaseMaintainViewModel
+ */
+public class ValidationResult implements Serializable {
+	private static final long serialVersionUID = -3402780313522946164L;
+	
+	private final ArrayList<FieldError> errors = new ArrayList<FieldError>();
+	
+	/**
+	 * @param field 發生錯誤的欄位名稱，沒有特定欄位時可以給 null
+	 * @param i18nKey 錯誤訊息的 label key
+	 * @param args 錯誤訊息的參數
+	 */
+	public void addError(String field, String i18nKey, Object... args) {
+		errors.add(new FieldError(field, i18nKey, args));
+	}
+	
+	/**
+	 * value 為 null 或空字串時，加入 {@link EmptyDataException} 相同的錯誤。
+	 * 
+	 * @param displayName 顯示在錯誤訊息上的欄位名稱
+	 * @return value 是否有值
+	 */
+	public boolean checkNotEmpty(String field, Object value, String displayName) {
+		if (value == null || (value instanceof String && StringUtils.isEmpty((String)value))) {
+			addError(field, "dtc.zk.error.data.empty", displayName);
+			return false;
+		}
+		return true;
+	}
+	
+	public boolean hasErrors() {
+		return !errors.isEmpty();
+	}
+	
+	public List<FieldError> getErrors() {
+		return Collections.unmodifiableList(errors);
+	}
+	
+	/**
+	 * @return 所有錯誤訊息，一個錯誤一行
+	 */
+	public String getMessage() {
+		StringBuffer result = new StringBuffer();
+		for (FieldError error : errors) {
+			if (result.length() > 0) { result.append("\n"); }
+			result.append(error.getMessage());
+		}
+		return result.toString();
+	}
+	
+	public static class FieldError implements Serializable {
+		private static final long serialVersionUID = 6126187536183906870L;
+		
+		private final String field;
+		private final String i18nKey;
+		private final Object[] args;
+		
+		FieldError(String field, String i18nKey, Object[] args) {
+			this.field = field;
+			this.i18nKey = i18nKey;
+			this.args = args;
+		}
+		
+		public String getField() {
+			return field;
+		}
+		
+		public String getMessage() {
+			return args.length == 0 ? I18nMessages.get(i18nKey) : I18nMessages.get(i18nKey, args);
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package com.dtc.common.zk.util;
+
+import java.io.Serializable;
+
+/**
+ * {@link MessageBoxUtil#confirm(String, ConfirmCallback)} 的結果處理。
+ * <p>
+ * 不需要 ZK 的 event processing thread（<code>disable-event-thread</code> 為 true 時也能使用），
+ * 確認視窗顯示之後 method 就直接返回，使用者按下按鈕時才會在 event 中呼叫 {@link #onYes()} 或 {@link #onNo()}。
+ */
+public abstract class ConfirmCallback implements Serializable {
+	private static final long serialVersionUID = -1418330858271012386L;
+
+	/**
+	 * 使用者按下「是」。
+	 */
+	public abstract void onYes() throws Exception;
+	
+	/**
+	 * 使用者按下「否」或直接關閉確認視窗，預設不做任何事。
+	 */
+	public void onNo() throws Exception {}
+}
@@ -0,0 +1,51 @@
+package com.dtc.common.zk.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * 逐列寫出 CSV（RFC 4180），不會暫存任何資料。
+ * 值為 null 時寫出空字串，其餘使用 toString()。
+ */
+public class CsvWriter implements Closeable {
+	private static final String LINE_END = "\r\n";
+	
+	private final Writer writer;
+	
+	public CsvWriter(Writer writer) {
+		this.writer = writer;
+	}
+	
+	/**
+	 * 寫出 UTF-8 BOM，讓 Excel 能正確判斷編碼。必須在第一列之前呼叫。
+	 */
+	public void writeBom() throws IOException {
+		writer.write('\uFEFF');
+	}
+	
+	public void writeRow(Object[] values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) { writer.write(','); }
+			writer.write(escape(values[i]));
+		}
+		writer.write(LINE_END);
+	}
+	
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+	
+	private static String escape(Object value) {
+		if (value == null) { return ""; }
+		
+		String text = value.toString();
+		if (text.indexOf(',') == -1 && text.indexOf('"') == -1 
+			&& text.indexOf('\n') == -1 && text.indexOf('\r') == -1) {
+			return text;
+		}
+		
+		return "\"" + text.replace("\"", "\"\"") + "\"";
+	}
+}
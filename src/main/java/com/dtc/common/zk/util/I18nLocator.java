@@ -11,7 +11,7 @@ public class I18nLocator implements LabelLocator2 {
 	private static final String TAIL = ".properties";
 	private static I18nLocator instance;
 	
-	public static void register() {
+	public static synchronized void register() {
 		if (instance != null) { return; }
 		
 		instance = new I18nLocator();
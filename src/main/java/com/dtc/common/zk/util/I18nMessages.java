@@ -0,0 +1,121 @@
+package com.dtc.common.zk.util;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.zkoss.util.Locales;
+import org.zkoss.util.resource.Labels;
+
+/**
+ * <code>dtc.zk.*</code> label 的 cache，每個 locale 只會向 {@link Labels} 取值一次。
+ * <p>
+ * 有參數的 label 會預先建立 {@link MessageFormat}，之後格式化時不用再重新解析 pattern。
+ * 不是 <code>dtc.zk.*</code> 的 key 則直接交給 {@link Labels}。
+ */
+public class I18nMessages {
+	static { I18nLocator.register(); }
+	
+	private static final String PREFIX = "dtc.zk.";
+	private static final String DEFAULT_FILE = "i18n.properties";
+	
+	private static final Set<String> KEYS = loadKeys();
+	private static final ConcurrentHashMap<Locale, MessageTable> TABLES = new ConcurrentHashMap<Locale, MessageTable>();
+	
+	private I18nMessages() {}
+	
+	/**
+	 * 使用目前的 locale（{@link Locales#getCurrent()}）。
+	 */
+	public static String get(String key) {
+		if (!key.startsWith(PREFIX)) { return Labels.getLabel(key); }
+		
+		String result = getTable(Locales.getCurrent()).labels.get(key);
+		return result != null ? result : Labels.getLabel(key);
+	}
+	
+	/**
+	 * 使用目前的 locale（{@link Locales#getCurrent()}）。
+	 */
+	public static String get(String key, Object[] args) {
+		if (!key.startsWith(PREFIX)) { return Labels.getLabel(key, args); }
+		
+		MessageTable table = getTable(Locales.getCurrent());
+		MessageFormat format = table.formats.get(key);
+		
+		if (format == null) {
+			String result = table.labels.get(key);
+			return result != null ? result : Labels.getLabel(key, args);
+		}
+		
+		synchronized (format) {	//MessageFormat 不是 thread safe
+			return format.format(args);
+		}
+	}
+	
+	/**
+	 * 預先建立 locale 的 cache，通常在 application 啟動時呼叫。
+	 */
+	public static void preload(Locale locale) {
+		getTable(locale);
+	}
+	
+	private static MessageTable getTable(Locale locale) {
+		MessageTable result = TABLES.get(locale);
+		if (result != null) { return result; }
+		
+		result = new MessageTable(locale);
+		MessageTable exist = TABLES.putIfAbsent(locale, result);
+		return exist == null ? result : exist;
+	}
+	
+	private static Set<String> loadKeys() {
+		Properties properties = new Properties();
+		InputStream stream = I18nMessages.class.getClassLoader().getResourceAsStream(DEFAULT_FILE);
+		
+		try {
+			properties.load(new InputStreamReader(stream, "UTF-8"));
+			stream.close();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		
+		return properties.stringPropertyNames();
+	}
+	
+	private static class MessageTable {
+		private final Map<String, String> labels;
+		private final Map<String, MessageFormat> formats;
+		
+		MessageTable(Locale locale) {
+			HashMap<String, String> labelMap = new HashMap<String, String>();
+			HashMap<String, MessageFormat> formatMap = new HashMap<String, MessageFormat>();
+			
+			//Labels 只看 thread 的 locale，所以要暫時切換
+			Locale old = Locales.setThreadLocal(locale);
+			try {
+				for (String key : KEYS) {
+					String label = Labels.getLabel(key);
+					if (label == null) { continue; }
+					
+					labelMap.put(key, label);
+					if (label.indexOf('{') != -1) {
+						formatMap.put(key, new MessageFormat(label, locale));
+					}
+				}
+			} finally {
+				Locales.setThreadLocal(old);
+			}
+			
+			labels = Collections.unmodifiableMap(labelMap);
+			formats = Collections.unmodifiableMap(formatMap);
+		}
+	}
+}
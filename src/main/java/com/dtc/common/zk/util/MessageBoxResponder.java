@@ -0,0 +1,20 @@
+package com.dtc.common.zk.util;
+
+import org.zkoss.zk.ui.event.Event;
+import org.zkoss.zk.ui.event.EventListener;
+
+/**
+ * {@link MessageBoxUtil} 顯示訊息視窗的實際執行者，
+ * 預設直接交給 {@link org.zkoss.zul.Messagebox}。
+ * <p>
+ * 沒有 servlet container 的環境（例如壓力測試）可以用 {@link MessageBoxUtil#setResponder(MessageBoxResponder)}
+ * 換成自己的實作，例如直接以某個按鈕回應 listener。
+ */
+public interface MessageBoxResponder {
+	/**
+	 * 參數與回傳值同 {@link org.zkoss.zul.Messagebox#show(String, String, int, String, EventListener)}。
+	 * 
+	 * @param listener 可以為 null
+	 */
+	int show(String message, String title, int buttons, String icon, EventListener<Event> listener);
+}
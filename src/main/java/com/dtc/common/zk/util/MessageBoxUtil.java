@@ -1,6 +1,7 @@
 package com.dtc.common.zk.util;
 
-import org.zkoss.util.resource.Labels;
+import java.io.Serializable;
+
 import org.zkoss.zk.ui.event.Event;
 import org.zkoss.zk.ui.event.EventListener;
 import org.zkoss.zul.Messagebox;
@@ -8,19 +9,35 @@ import org.zkoss.zul.Messagebox;
 public class MessageBoxUtil {
 	static { I18nLocator.register(); }
 	
+	private static final MessageBoxResponder DEFAULT_RESPONDER = new MessageBoxResponder() {
+		@Override
+		public int show(String message, String title, int buttons, String icon, EventListener<Event> listener) {
+			return Messagebox.show(message, title, buttons, icon, listener);
+		}
+	};
+	
+	private static volatile MessageBoxResponder responder = DEFAULT_RESPONDER;
+	
+	/**
+	 * 替換顯示訊息視窗的方式，給 null 則恢復預設值。
+	 */
+	public static void setResponder(MessageBoxResponder responder) {
+		MessageBoxUtil.responder = responder == null ? DEFAULT_RESPONDER : responder;
+	}
+	
 	public static void error(String message) {
-		String title = Labels.getLabel("dtc.zk.error.title");
-		Messagebox.show(message, title, Messagebox.OK, Messagebox.ERROR);
+		String title = I18nMessages.get("dtc.zk.error.title");
+		responder.show(message, title, Messagebox.OK, Messagebox.ERROR, null);
 	}
 
 	public static void info(String message) {
-		String title = Labels.getLabel("dtc.zk.info.title");
-		Messagebox.show(message, title, Messagebox.OK, Messagebox.INFORMATION);
+		String title = I18nMessages.get("dtc.zk.info.title");
+		responder.show(message, title, Messagebox.OK, Messagebox.INFORMATION, null);
 	}
 
 	public static void confirm(String message, EventListener<Event> listener) {
-		String title = Labels.getLabel("dtc.zk.confirm.title");
-		Messagebox.show(
+		String title = I18nMessages.get("dtc.zk.confirm.title");
+		responder.show(
 			message, 
 			title, 
 			Messagebox.YES | Messagebox.NO, Messagebox.QUESTION, 
@@ -28,9 +45,45 @@ public class MessageBoxUtil {
 		);
 	}
 
+	/**
+	 * 確認視窗顯示之後就直接返回，結果交給 callback 處理。
+	 */
+	public static void confirm(String message, ConfirmCallback callback) {
+		confirm(message, new ConfirmListener(callback));
+	}
+
+	/**
+	 * 必須開啟 ZK 的 event processing thread 才會等到使用者按下按鈕才返回，
+	 * 否則一律回傳 false。
+	 * 
+	 * @deprecated 改用 {@link #confirm(String, ConfirmCallback)}
+	 */
+	@Deprecated
 	public static boolean confirm(String message) {
-		String title = Labels.getLabel("dtc.zk.confirm.title");
-		int buttonIndex = Messagebox.show(message, title, Messagebox.YES | Messagebox.NO, Messagebox.QUESTION);
-		return (buttonIndex == Messagebox.OK);
+		String title = I18nMessages.get("dtc.zk.confirm.title");
+		int buttonIndex = responder.show(message, title, Messagebox.YES | Messagebox.NO, Messagebox.QUESTION, null);
+		return (buttonIndex == Messagebox.YES);
+	}
+	
+	/**
+	 * 確認視窗開著的期間會跟著 desktop 一起序列化（session replication），所以必須是 {@link Serializable}。
+	 */
+	private static class ConfirmListener implements EventListener<Event>, Serializable {
+		private static final long serialVersionUID = 1L;
+		
+		private final ConfirmCallback callback;
+		
+		ConfirmListener(ConfirmCallback callback) {
+			this.callback = callback;
+		}
+		
+		@Override
+		public void onEvent(Event event) throws Exception {
+			if (Messagebox.ON_YES.equals(event.getName())) {
+				callback.onYes();
+			} else {
+				callback.onNo();
+			}
+		}
 	}
 }
@@ -0,0 +1,82 @@
+package com.dtc.common.zk.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.zkoss.lang.Library;
+import org.zkoss.zk.ui.Executions;
+import org.zkoss.zk.ui.WebApp;
+import org.zkoss.zk.ui.metainfo.PageDefinition;
+import org.zkoss.zk.ui.metainfo.PageDefinitions;
+
+/**
+ * application 層級的 {@link PageDefinition} cache，key 值為 ZUL 的 URI。
+ * <p>
+ * ZK 本身的 cache 每次取用仍要解析 URI、檢查檔案是否更新，
+ * 經常開啟的 dialog（編輯、查詢、確認）直接使用這裡 cache 的結果即可。
+ * <p>
+ * 注意：
+ * <ul>
+ * 	<li>只 cache 絕對路徑（「/」或「~./」開頭）且不含「*」（locale 相依）的 URI，其餘直接交給 ZK</li>
+ * 	<li>ZUL 修改之後不會自動更新，開發環境請將 library property {@value #DISABLED} 設為 true</li>
+ * </ul>
+ */
+public class PageDefinitionCache {
+	public static final String DISABLED = "com.dtc.common.zk.pageDefinitionCache.disabled";
+	
+	private static final ConcurrentHashMap<String, PageDefinition> CACHE = new ConcurrentHashMap<String, PageDefinition>();
+	
+	private PageDefinitionCache() {}
+	
+	/**
+	 * 必須在 ZK 的 execution 當中呼叫。
+	 */
+	public static PageDefinition get(String uri) {
+		if (!isCacheable(uri)) {
+			return Executions.getCurrent().getPageDefinition(uri);
+		}
+		
+		PageDefinition result = CACHE.get(uri);
+		if (result != null) { return result; }
+		
+		result = Executions.getCurrent().getPageDefinition(uri);
+		if (result != null) {
+			CACHE.put(uri, result);
+		}
+		return result;
+	}
+	
+	/**
+	 * 在 application 啟動時預先解析 ZUL，不需要 execution。
+	 * 解析失敗的 URI 會略過。
+	 */
+	public static void warmUp(WebApp webApp, String... uris) {
+		for (String uri : uris) {
+			if (!isCacheable(uri)) { continue; }
+			
+			try {
+				PageDefinition definition = PageDefinitions.getPageDefinition(
+					webApp, PageDefinitions.getLocator(webApp, uri), uri
+				);
+				if (definition != null) {
+					CACHE.put(uri, definition);
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	public static void invalidate(String uri) {
+		CACHE.remove(uri);
+	}
+	
+	public static void invalidateAll() {
+		CACHE.clear();
+	}
+	
+	private static boolean isCacheable(String uri) {
+		if ("true".equals(Library.getProperty(DISABLED))) { return false; }
+		
+		return (uri.startsWith("/") || uri.startsWith("~./")) && uri.indexOf('*') == -1;
+	}
+}
@@ -0,0 +1,18 @@
+package com.dtc.common.zk.util;
+
+import java.util.List;
+
+/**
+ * 提供 {@link ReferenceDataRegistry} 載入某一份參照資料（代碼表）的方式。
+ * <p>
+ * <b>注意：</b>會在背景 thread 執行，不能依賴 ZK 的 execution / desktop。
+ *
+ * @param <E> entity
+ * @see ReferenceDataRegistry#register(String, ReferenceDataLoader, long)
+ */
+public interface ReferenceDataLoader<E> {
+	/**
+	 * @return 完整的參照資料，回傳之後就不會再被修改
+	 */
+	List<E> load() throws Exception;
+}
@@ -0,0 +1,214 @@
+package com.dtc.common.zk.util;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.zkoss.lang.Library;
+
+/**
+ * application 層級共用的參照資料（代碼表，例如科別、modality、狀態碼）registry。
+ * <p>
+ * 每一份參照資料以名稱註冊一個 {@link ReferenceDataLoader}，
+ * 載入結果會包成不可修改的 {@link ReferenceDataSnapshot}，所有 session 的 converter / matcher 共用同一份。
+ * 重新載入是在背景 thread 完成之後才整份替換，所以讀取的一方永遠拿到完整的某一個版本。
+ * <p>
+ * 重新載入的時機：
+ * <ul>
+ * 	<li>註冊時指定的週期，參見 {@link #register(String, ReferenceDataLoader, long)}</li>
+ * 	<li>資料異動之後呼叫 {@link #invalidate(String)}</li>
+ * </ul>
+ * 載入失敗時繼續提供上一個成功的版本（第一次載入就失敗則是空的），
+ * 並在 library property {@value #RETRY} 秒（預設 30）之後於背景重試，讀取的一方不會同步地一再重新載入。
+ * <p>
+ * 使用方式參見 {@link com.dtc.common.zk.converter.BaseConverter#setDataSource(String)}。
+ */
+public class ReferenceDataRegistry {
+	public static final String RETRY = "com.dtc.common.zk.referenceData.retry";
+
+	private static final int DEFAULT_RETRY_SECONDS = 30;
+	private static final ConcurrentHashMap<String, Dataset<?>> DATASETS = new ConcurrentHashMap<String, Dataset<?>>();
+	private static ScheduledExecutorService scheduler;
+
+	private ReferenceDataRegistry() {}
+
+	/**
+	 * 註冊一份不會定期重新載入的參照資料，等同 <code>register(name, loader, 0)</code>。
+	 */
+	public static <E> void register(String name, ReferenceDataLoader<E> loader) {
+		register(name, loader, 0);
+	}
+
+	/**
+	 * 註冊一份參照資料。第一次 {@link #getSnapshot(String)} 時才會載入。
+	 * 同一個名稱重複註冊時，舊的註冊會被取代。
+	 *
+	 * @param refreshSeconds 背景重新載入的週期（秒），小於等於 0 代表不定期重新載入
+	 */
+	public static <E> void register(String name, ReferenceDataLoader<E> loader, long refreshSeconds) {
+		if (name == null || loader == null) {
+			throw new IllegalArgumentException();
+		}
+
+		Dataset<E> dataset = new Dataset<E>(name, loader);
+
+		if (refreshSeconds > 0) {
+			dataset.schedule = getScheduler().scheduleWithFixedDelay(
+				new RefreshTask(name), refreshSeconds, refreshSeconds, TimeUnit.SECONDS
+			);
+		}
+
+		Dataset<?> old = DATASETS.put(name, dataset);
+		if (old != null && old.schedule != null) {
+			old.schedule.cancel(false);
+		}
+	}
+
+	/**
+	 * @return 目前版本的參照資料。如果還沒載入過，會在呼叫的 thread 上直接載入。
+	 * @throws IllegalArgumentException 沒有註冊這個名稱
+	 */
+	@SuppressWarnings("unchecked")
+	public static <E> ReferenceDataSnapshot<E> getSnapshot(String name) {
+		return ((Dataset<E>)getDataset(name)).getSnapshot();
+	}
+
+	/**
+	 * 在呼叫的 thread 上立刻重新載入。
+	 */
+	public static void refresh(String name) {
+		getDataset(name).reload();
+	}
+
+	/**
+	 * 通知某份參照資料已經異動，在背景重新載入。
+	 * 重新載入完成之前，讀取的一方仍然拿到舊版本；重新載入期間的多次通知只會觸發一次載入。
+	 */
+	public static void invalidate(String name) {
+		Dataset<?> dataset = getDataset(name);
+		if (dataset.refreshing.compareAndSet(false, true)) {
+			getScheduler().execute(new RefreshTask(name));
+		}
+	}
+
+	/**
+	 * @return 所有已註冊的名稱
+	 */
+	public static Set<String> getNames() {
+		return Collections.unmodifiableSet(DATASETS.keySet());
+	}
+
+	/**
+	 * 停止背景重新載入，通常在 application 結束時呼叫。
+	 */
+	public static synchronized void shutdown() {
+		if (scheduler == null) { return; }
+
+		scheduler.shutdownNow();
+		scheduler = null;
+	}
+
+	private static Dataset<?> getDataset(String name) {
+		Dataset<?> dataset = DATASETS.get(name);
+
+		if (dataset == null) {
+			throw new IllegalArgumentException("未註冊的參照資料：" + name);
+		}
+
+		return dataset;
+	}
+
+	private static synchronized ScheduledExecutorService getScheduler() {
+		if (scheduler == null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "dtc-zk-reference-data");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return scheduler;
+	}
+
+	private static class RefreshTask implements Runnable {
+		private final String name;
+
+		RefreshTask(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public void run() {
+			Dataset<?> dataset = DATASETS.get(name);
+			if (dataset == null) { return; }
+
+			dataset.refreshing.set(false);
+			dataset.reload();
+		}
+	}
+
+	private static class Dataset<E> {
+		private final String name;
+		private final ReferenceDataLoader<E> loader;
+		private final AtomicReference<ReferenceDataSnapshot<E>> current = new AtomicReference<ReferenceDataSnapshot<E>>();
+		private final AtomicLong version = new AtomicLong();
+		private final AtomicBoolean refreshing = new AtomicBoolean();
+		private ScheduledFuture<?> schedule;
+
+		Dataset(String name, ReferenceDataLoader<E> loader) {
+			this.name = name;
+			this.loader = loader;
+		}
+
+		ReferenceDataSnapshot<E> getSnapshot() {
+			ReferenceDataSnapshot<E> result = current.get();
+			if (result != null) { return result; }
+
+			synchronized (this) {
+				if (current.get() == null) {
+					reload();
+				}
+			}
+
+			return current.get();
+		}
+
+		/**
+		 * 載入失敗時保留舊版本，還沒有任何版本時放一份空的（版本號為 0），並安排背景重試。
+		 * 版本號在載入之前就先取號，同時有多個載入時（例如定期重新載入與 refresh()），
+		 * 只有版本號比目前新的結果才會取代目前的版本，比較慢完成的舊載入不會蓋掉新的。
+		 */
+		void reload() {
+			long newVersion = version.incrementAndGet();
+			ReferenceDataSnapshot<E> snapshot;
+			try {
+				snapshot = new ReferenceDataSnapshot<E>(name, newVersion, loader.load());
+			} catch (Exception e) {
+				e.printStackTrace();
+				current.compareAndSet(null, new ReferenceDataSnapshot<E>(name, 0, Collections.<E>emptyList()));
+				if (refreshing.compareAndSet(false, true)) {
+					getScheduler().schedule(
+						new RefreshTask(name), Library.getIntProperty(RETRY, DEFAULT_RETRY_SECONDS), TimeUnit.SECONDS
+					);
+				}
+				return;
+			}
+			
+			while (true) {
+				ReferenceDataSnapshot<E> old = current.get();
+				if (old != null && old.getVersion() >= newVersion) { return; }
+				if (current.compareAndSet(old, snapshot)) { return; }
+			}
+		}
+	}
+}
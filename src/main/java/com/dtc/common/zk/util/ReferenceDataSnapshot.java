@@ -0,0 +1,81 @@
+package com.dtc.common.zk.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link ReferenceDataRegistry} 中某一份參照資料在某個版本的內容。
+ * <p>
+ * 資料本身不可修改，所以可以讓所有 session 的 converter 共用同一個 instance。
+ * 依照某個 key 建立的索引（{@link #index(Object, KeyExtractor)}）也會跟著 snapshot 一起共用，
+ * 每一份 snapshot 的每一種索引只會建立一次。
+ *
+ * @param <E> entity
+ */
+public final class ReferenceDataSnapshot<E> {
+	private final String name;
+	private final long version;
+	private final long loadTime;
+	private final List<E> data;
+	private final ConcurrentHashMap<Object, Map<Object, E>> indexes = new ConcurrentHashMap<Object, Map<Object, E>>();
+
+	/**
+	 * 從 entity 取出索引用的 key 值。
+	 */
+	public interface KeyExtractor<E> {
+		Object getKey(E data);
+	}
+
+	ReferenceDataSnapshot(String name, long version, List<E> data) {
+		this.name = name;
+		this.version = version;
+		this.loadTime = System.currentTimeMillis();
+		this.data = Collections.unmodifiableList(new ArrayList<E>(data));
+	}
+
+	/**
+	 * 取得以 extractor 回傳值為 key 的索引，同一個 indexName 只會建立一次。
+	 * 如果 key 值重複，以第一筆為準（與 {@link com.dtc.common.zk.converter.BaseConverter} 依序比對的結果一致）。
+	 *
+	 * @param indexName 索引的識別值，同一種 extractor 必須使用同一個 indexName
+	 */
+	public Map<Object, E> index(Object indexName, KeyExtractor<E> extractor) {
+		Map<Object, E> result = indexes.get(indexName);
+		if (result != null) { return result; }
+
+		HashMap<Object, E> map = new HashMap<Object, E>(data.size() * 2);
+		for (E entity : data) {
+			Object key = extractor.getKey(entity);
+			if (key != null && !map.containsKey(key)) {
+				map.put(key, entity);
+			}
+		}
+
+		result = Collections.unmodifiableMap(map);
+		Map<Object, E> exist = indexes.putIfAbsent(indexName, result);
+		return exist == null ? result : exist;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return 每次重新載入就會加一，尚未成功載入過則為 0
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	public long getLoadTime() {
+		return loadTime;
+	}
+
+	public List<E> getData() {
+		return data;
+	}
+}
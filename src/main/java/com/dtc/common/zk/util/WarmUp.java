@@ -0,0 +1,160 @@
+package com.dtc.common.zk.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang.StringUtils;
+import org.zkoss.lang.Library;
+import org.zkoss.util.Locales;
+import org.zkoss.zk.ui.WebApp;
+import org.zkoss.zk.ui.util.WebAppInit;
+
+import com.dtc.common.zk.viewmodel.BaseEntityViewModel;
+
+/**
+ * 在 application 啟動時預先做好第一個 request 才會做的事情，
+ * 讓 rolling restart 之後的第一個使用者不用等：
+ * <ul>
+ * 	<li>註冊 {@link I18nLocator}，並建立各 locale 的 <code>dtc.zk.*</code> 訊息 cache</li>
+ * 	<li>載入 view model class、解析 {@link BaseEntityViewModel} 的 entity class</li>
+ * 	<li>以 {@link PageDefinitionCache} 預先解析 ZUL</li>
+ * 	<li>載入 {@link ReferenceDataRegistry} 中的參照資料</li>
+ * </ul>
+ * 各項工作會平行執行，全部完成後才結束 {@link #init(WebApp)}，並以 java.util.logging 記錄耗時。
+ * <p>
+ * 使用方式（zk.xml）：
+ * <pre>
+ * &lt;listener&gt;
+ * 	&lt;listener-class&gt;com.dtc.common.zk.util.WarmUp&lt;/listener-class&gt;
+ * &lt;/listener&gt;
+ * </pre>
+ * 要預熱的對象以 library property 設定，多個值以逗號分隔：
+ * <ul>
+ * 	<li>{@value #VIEW_MODELS}：view model 的 class 名稱</li>
+ * 	<li>{@value #LOCALES}：locale，例如 <code>zh_TW,en</code>，沒設定時為 JVM 預設 locale</li>
+ * 	<li>{@value #PAGES}：ZUL 的 URI</li>
+ * 	<li>{@value #REFERENCE_DATA}：參照資料的名稱，沒設定時為所有已註冊的參照資料</li>
+ * </ul>
+ * 參照資料必須在這個 listener 之前註冊（例如放在前面的 {@link WebAppInit}）。
+ */
+public class WarmUp implements WebAppInit {
+	public static final String VIEW_MODELS = "com.dtc.common.zk.warmUp.viewModels";
+	public static final String LOCALES = "com.dtc.common.zk.warmUp.locales";
+	public static final String PAGES = "com.dtc.common.zk.warmUp.pages";
+	public static final String REFERENCE_DATA = "com.dtc.common.zk.warmUp.referenceData";
+	
+	private static final Logger logger = Logger.getLogger(WarmUp.class.getName());
+	
+	@Override
+	public void init(final WebApp webApp) throws Exception {
+		long start = System.currentTimeMillis();
+		I18nLocator.register();
+		
+		ArrayList<Task> tasks = new ArrayList<Task>();
+		
+		String[] locales = split(LOCALES);
+		if (locales.length == 0) {
+			locales = new String[] {Locale.getDefault().toString()};
+		}
+		for (final String locale : locales) {
+			tasks.add(new Task("locale " + locale) {
+				@Override
+				void run() throws Exception {
+					I18nMessages.preload(Locales.getLocale(locale));
+				}
+			});
+		}
+		
+		for (final String className : split(VIEW_MODELS)) {
+			tasks.add(new Task("view model " + className) {
+				@Override
+				void run() throws Exception {
+					Class<?> type = Class.forName(className, true, Thread.currentThread().getContextClassLoader());
+					type.getMethods();	//binder 解析 annotation 時會用到
+					if (BaseEntityViewModel.class.isAssignableFrom(type)) {
+						BaseEntityViewModel.resolveEntityClass(type);
+					}
+				}
+			});
+		}
+		
+		for (final String uri : split(PAGES)) {
+			tasks.add(new Task("page " + uri) {
+				@Override
+				void run() throws Exception {
+					PageDefinitionCache.warmUp(webApp, uri);
+				}
+			});
+		}
+		
+		String[] datasets = split(REFERENCE_DATA);
+		Collection<String> names = datasets.length == 0 ? ReferenceDataRegistry.getNames() : Arrays.asList(datasets);
+		for (final String name : names) {
+			tasks.add(new Task("reference data " + name) {
+				@Override
+				void run() throws Exception {
+					ReferenceDataRegistry.getSnapshot(name);
+				}
+			});
+		}
+		
+		if (!tasks.isEmpty()) {
+			ExecutorService executor = Executors.newFixedThreadPool(
+				Math.min(tasks.size(), Runtime.getRuntime().availableProcessors())
+			);
+			try {
+				List<Future<Long>> results = executor.invokeAll(tasks);
+				for (int i = 0; i < tasks.size(); i++) {
+					try {
+						logger.info("warm up " + tasks.get(i).name + ": " + results.get(i).get() + " ms");
+					} catch (Exception e) {
+						logger.log(Level.WARNING, "warm up " + tasks.get(i).name + " failed", e.getCause());
+					}
+				}
+			} finally {
+				executor.shutdown();
+			}
+		}
+		
+		logger.info("warm up finished: " + tasks.size() + " tasks, " + (System.currentTimeMillis() - start) + " ms");
+	}
+	
+	private static String[] split(String property) {
+		String value = Library.getProperty(property);
+		if (StringUtils.isBlank(value)) { return new String[0]; }
+		
+		ArrayList<String> result = new ArrayList<String>();
+		for (String token : value.split(",")) {
+			if (StringUtils.isNotBlank(token)) {
+				result.add(token.trim());
+			}
+		}
+		return result.toArray(new String[result.size()]);
+	}
+	
+	private static abstract class Task implements Callable<Long> {
+		private final String name;
+		
+		Task(String name) {
+			this.name = name;
+		}
+		
+		abstract void run() throws Exception;
+		
+		@Override
+		public Long call() throws Exception {
+			long start = System.currentTimeMillis();
+			run();
+			return System.currentTimeMillis() - start;
+		}
+	}
+}
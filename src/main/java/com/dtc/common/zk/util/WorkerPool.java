@@ -0,0 +1,94 @@
+package com.dtc.common.zk.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.zkoss.lang.Library;
+
+/**
+ * 所有 view model 共用、有上限的背景 thread pool，用來平行執行查詢之類的工作。
+ * <ul>
+ * 	<li>thread 數量以 library property {@value #SIZE} 設定，預設為 CPU 數量的兩倍</li>
+ * 	<li>queue 滿了的時候，工作會直接在呼叫的 thread 上執行，不會丟出例外</li>
+ * 	<li>預先載入之類可有可無的工作則以 {@link #trySubmit(Callable)} 送出，queue 滿了就直接捨棄，不會佔用呼叫的 thread</li>
+ * 	<li>在 pool 中執行的工作不在 ZK 的 execution 中，不能操作 component 或 desktop</li>
+ * </ul>
+ */
+public class WorkerPool {
+	public static final String SIZE = "com.dtc.common.zk.workerPool.size";
+	
+	private static final int QUEUE_SIZE = 1000;
+	private static ExecutorService executor;
+	
+	private WorkerPool() {}
+	
+	public static synchronized ExecutorService get() {
+		if (executor != null) { return executor; }
+		
+		int size = Library.getIntProperty(SIZE, Runtime.getRuntime().availableProcessors() * 2);
+		ThreadPoolExecutor result = new ThreadPoolExecutor(
+			size, size, 60, TimeUnit.SECONDS, 
+			new ArrayBlockingQueue<Runnable>(QUEUE_SIZE),
+			new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+				
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "dtc-zk-worker-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			},
+			new RejectedExecutionHandler() {
+				@Override
+				public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+					if (runnable instanceof OptionalTask) {
+						((OptionalTask<?>)runnable).cancel(false);
+						return;
+					}
+					if (!executor.isShutdown()) {	//跟 CallerRunsPolicy 一樣
+						runnable.run();
+					}
+				}
+			}
+		);
+		result.allowCoreThreadTimeOut(true);
+		executor = result;
+		return executor;
+	}
+	
+	/**
+	 * 送出可有可無的工作。與 {@link ExecutorService#submit(Callable)} 不同，queue 滿了的時候不會在呼叫的 thread 上執行。
+	 * @return 工作的 {@link Future}，queue 滿了而被捨棄時為 null
+	 */
+	public static <T> Future<T> trySubmit(Callable<T> task) {
+		OptionalTask<T> result = new OptionalTask<T>(task);
+		get().execute(result);
+		return result.isCancelled() ? null : result;
+	}
+	
+	/**
+	 * 停止 thread pool，通常在 application 結束時呼叫。
+	 */
+	public static synchronized void shutdown() {
+		if (executor == null) { return; }
+		
+		executor.shutdownNow();
+		executor = null;
+	}
+	
+	//讓 RejectedExecutionHandler 認得出 trySubmit() 送出的工作
+	private static class OptionalTask<T> extends FutureTask<T> {
+		OptionalTask(Callable<T> task) {
+			super(task);
+		}
+	}
+}
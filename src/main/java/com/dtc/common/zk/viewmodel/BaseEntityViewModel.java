@@ -1,21 +1,49 @@
 package com.dtc.common.zk.viewmodel;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStreamWriter;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang.StringUtils;
 import org.zkoss.bind.annotation.AfterCompose;
 import org.zkoss.bind.annotation.Command;
 import org.zkoss.bind.annotation.Init;
 import org.zkoss.bind.annotation.NotifyChange;
+import org.zkoss.lang.Library;
+import org.zkoss.lang.reflect.Fields;
+import org.zkoss.util.media.AMedia;
+import org.zkoss.zul.Filedownload;
 import org.zkoss.zul.ListModelList;
 
 import com.dtc.boundary.Entity;
 import com.dtc.common.core.date.DateUtil;
+import com.dtc.common.zk.converter.DicomDateToStringConverter;
+import com.dtc.common.zk.util.CsvWriter;
+import com.dtc.common.zk.util.I18nMessages;
+import com.dtc.common.zk.util.MessageBoxUtil;
+import com.dtc.common.zk.util.WorkerPool;
 
 /**
  * 「單一 entity 資料顯示」頁面的基礎 ViewModel，
@@ -62,42 +90,187 @@ import com.dtc.common.core.date.DateUtil;
  * 		搜尋條件會變成兩個，分別為 {@link Constraint#NOT_SMALLER} 與 {@link Constraint#NOT_BIGGER}。
  * 	</li>
  * </ul>
+ * 如果欄位是以字串儲存的 DICOM 日期（宣告在 {@link #getDicomDateFields()}），
+ * 區間的上下限會改用 {@link DicomDateToStringConverter#toLowerBound(Object)} 與
+ * {@link DicomDateToStringConverter#toUpperBound(Object)}，變成單純的字串區間：
+ * <pre>
+ * AND studyDate &gt;= '20260101' AND studyDate &lt; '20260102'
+ * </pre>
+ * 此時 {@value #CONSTRAINT_START}、{@value #CONSTRAINT_END} 與 {@value #CONSTRAINT_FROM}、{@value #CONSTRAINT_TO} 相同。
+ * <p>
  * <b>注意：</b>使用 {@link Constraint#LIKE}，比對值會是以該物件的 toString() 回傳值前後再加上「%」。
+ * <p>
+ * {@link Constraint#CONTAINS} 只能用在 {@link #getIndexedFields()} 宣告的欄位（其餘會視為不分大小寫的 like，見下述），
+ * 會先以 {@link TextIndex} 找出符合的 id，HQL 則變成 <code>id in (:foo)</code>（沒有符合的 id 時為 <code>1 = 0</code>），
+ * 所以 {@link #queryData(String, Map)} 必須支援 collection 型態的參數（例如 Hibernate 的 <code>Query.setProperties(Map)</code>）。
+ * 符合的 id 超過 {@link #getContainsIdLimit()} 筆（或索引無法使用）時退回 <code>lower(foo) like '%x%'</code>，
+ * 避免 IN list 超過資料庫的上限，而且跟索引一樣不分大小寫。
+ * 索引在第一次搜尋時以 {@link #queryTextIndex(String)} 建立，之後由 {@link BaseMaintainViewModel} 存檔、刪除時更新。
+ * <b>注意：</b>不經過 view model 的寫入（批次程式、其他系統、直接下 SQL）不會反映在索引上，
+ * 必須呼叫 {@link #invalidateTextIndex()} 或 {@link TextIndex#invalidate(Class)}，讓下一次搜尋重建索引。
+ * 索引只存在於單一 JVM，cluster 中其他 node 的存檔要等索引過期（{@link TextIndex#TTL}）重建之後才會反映。
+ * 
+ * <h1>Fetch plan</h1>
+ * 預設的 HQL 對 nested attribute（例如 <code>foo.bar</code>）是 implicit join，
+ * 資料列表元件如果有顯示 <code>foo</code> 的內容，每一筆都會再 lazy load 一次。
+ * 可以在 constructor 或 {@link #baseEntityInit()} 之後宣告：
+ * <ul>
+ * 	<li>{@link #addFetchJoin(String, String)}：會顯示的 association，以 <code>left join fetch</code> 一次讀回</li>
+ * 	<li>{@link #addFilterJoin(String, String)}：只用來搜尋的 association，以明確的 <code>join</code> 取代 implicit join</li>
+ * </ul>
+ * 有宣告任何 join 時，HQL 會變成：
+ * <pre>
+ * select distinct root from Entity root left join fetch root.foo foo join root.bar bar where 1=1 AND foo.name = :foo_name
+ * </pre>
+ * 即使只有 {@link #addFilterJoin(String, String)}（或是匯出時不作 fetch）也一樣會有 <code>select distinct root</code>，
+ * 否則結果會是所有 alias 的 <code>Object[]</code>，collection 的 join 也會讓同一筆資料重複出現。
+ * 此時即使沒有任何搜尋條件，也會以 {@link #queryData(String, Map)} 查詢。
+ * 
+ * <h1>Projection 模式</h1>
+ * 如果 {@link #getProjectionColumns()} 不是 null，{@link #search()} 只會查詢 id 與指定的欄位：
+ * <pre>
+ * select id, foo, bar.name from Entity where ...
+ * </pre>
+ * nested 欄位（例如 <code>bar.name</code>）的 association 如果沒有以 {@link #addFetchJoin(String, String)} 宣告，
+ * 會自動以 <code>left join root.bar p_bar</code> 補上，而不是 implicit join（inner join），
+ * 所以 <code>bar</code> 為 null 的資料與 entity 模式一樣會出現（欄位值為 null）。
+ * 因此 nested 欄位的上一層必須是 association，不能是 embedded component。
+ * <p>
+ * 交給 {@link #queryProjection(String, Map)} 執行，結果轉換成 {@link ProjectionRow}
+ * 放在 {@link #getProjectionModel()}（而不是 {@link #getListModel()}），
+ * 資料列表元件必須改以 projection model 為 model。
+ * 選取某一筆資料時，才以 {@link #loadData(Object)} 讀取完整的 entity，參見 {@link #getSelectedData()}。
+ * 
+ * <h1>即時更新</h1>
+ * 如果 {@link #isLiveRefresh()} 回傳 true，其他使用者透過 {@link BaseMaintainViewModel} 存檔、刪除同一種 entity 時，
+ * 會經由 {@link EntityChangeBus} 以 server push 直接更新資料列表元件：
+ * 符合目前搜尋條件（{@link #acceptChange(Entity)}）的資料會新增或取代，不符合或已刪除的則移除。
+ * projection 模式不支援。
+ * 
+ * <h1>匯出功能</h1>
+ * 操作按鈕的 onClick：export。
+ * 以目前的搜尋條件產生與 {@link #search()} 相同的 HQL，交給 {@link #scrollData(String, Map, int, RowCallback)} 逐筆讀取，
+ * 每筆資料經 {@link #getExportRow(Entity)} 轉換後直接寫入 CSV 暫存檔再下載，
+ * 不會放進資料列表元件的 model，所以記憶體用量與匯出筆數無關。
  * 
  * @author MontyPan
  */
 public abstract class BaseEntityViewModel<T extends Entity> extends BaseViewModel {
+	private static final long serialVersionUID = 1L;
+	
+	public static final String SEARCH_TIMEOUT = "com.dtc.common.zk.search.timeout";
+	
 	private static final String CONSTRAINT_FROM = "_from";
 	private static final String CONSTRAINT_TO = "_to";
 	private static final String CONSTRAINT_START = "_start";
 	private static final String CONSTRAINT_END = "_end";
 	private static final String CONSTRAINT_BETWEEN = "_between";
+	private static final String[] RANGE_TAILS = {
+		CONSTRAINT_FROM, CONSTRAINT_START, CONSTRAINT_TO, CONSTRAINT_END, CONSTRAINT_BETWEEN
+	};
+	private static final String ROOT_ALIAS = "root";
+	private static final String PROJECTION_ALIAS = "p_";
+	private static final int IN_LIST_SIZE = 1000;
+	private static final ConcurrentHashMap<Class<?>, Class<?>> ENTITY_CLASSES = new ConcurrentHashMap<Class<?>, Class<?>>();
 	
 	//這幾個欄位就偷懶不設 private 了 [逃]
 	protected final Class<T> entityClass;
-	protected T currentData;
+	//序列化時已經存檔過的資料只寫 id，參見 writeObject()
+	protected transient T currentData;
 	
-	private ListModelList<T> dataStore;
+	//資料列表序列化時只寫 id，參見 writeObject()
+	private transient ListModelList<T> dataStore;
+	private transient ListModelList<ProjectionRow> projectionStore = new ListModelList<ProjectionRow>();
 	private HashMap<String, Object> constraint = new HashMap<String, Object>();
 	private HashMap<String, Constraint> opMap = new HashMap<String, Constraint>();
+	//key 為 association 的 path、value 為 alias
+	private LinkedHashMap<String, String> fetchJoins = new LinkedHashMap<String, String>();
+	private LinkedHashMap<String, String> filterJoins = new LinkedHashMap<String, String>();
+	private transient ArrayList<PageLoad<?>> pageLoads = new ArrayList<PageLoad<?>>();
+	//反序列化之後還沒還原的資料列表，null 代表不需要還原
+	private transient List<Object> restoreIds;
+	private transient List<Object> restoreSelection;
+	private transient Object restoreCurrentId;
+	//在 getter 中還原的期間，DAO 的錯誤不顯示訊息視窗
+	private transient boolean restoring;
 	
 	/**
 	 * 會做 {@link #afterResetSearch()}。
 	 */
 	@SuppressWarnings("unchecked")
 	protected BaseEntityViewModel() {
-		Type type = getClass().getGenericSuperclass();
-		entityClass = (Class<T>)((ParameterizedType)type).getActualTypeArguments()[0];
+		entityClass = (Class<T>)resolveEntityClass(getClass());
 		dataStore = new ListModelList<T>();
 		afterResetSearch();
 	}
 	
+	/**
+	 * @return view model class 所對應的 entity class，解析結果會 cache 起來
+	 */
+	public static Class<?> resolveEntityClass(Class<?> viewModelClass) {
+		Class<?> result = ENTITY_CLASSES.get(viewModelClass);
+		if (result != null) { return result; }
+		
+		Type type = viewModelClass.getGenericSuperclass();
+		result = (Class<?>)((ParameterizedType)type).getActualTypeArguments()[0];
+		ENTITY_CLASSES.put(viewModelClass, result);
+		return result;
+	}
+	
 	@Init(superclass=true)
 	public void baseEntityInit() {}
 	
 	@AfterCompose
 	public void baseEntityAfterCompose() {
-		search();
+		if (isLiveRefresh()) {
+			EntityChangeBus.subscribe(entityClass, this);
+		}
+		
+		if (pageLoads.isEmpty()) {
+			search();
+			return;
+		}
+		
+		ArrayList<Future<?>> futures = new ArrayList<Future<?>>(pageLoads.size());
+		for (final PageLoad<?> load : pageLoads) {
+			futures.add(WorkerPool.get().submit(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					return load.load();
+				}
+			}));
+		}
+		
+		search();	//初始的 search 在原本的 thread 上與 page load 同時執行
+		
+		LinkedHashSet<String> properties = new LinkedHashSet<String>();
+		for (int i = 0; i < pageLoads.size(); i++) {
+			try {
+				applyLoad(pageLoads.get(i), futures.get(i).get());
+				properties.addAll(Arrays.asList(pageLoads.get(i).getProperties()));
+			} catch (ExecutionException e) {
+				handleDaoException(e.getCause() instanceof Exception ? (Exception)e.getCause() : e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		pageLoads.clear();
+		notifyChange(properties.toArray(new String[properties.size()]));
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <R> void applyLoad(PageLoad<R> load, Object result) {
+		load.apply((R)result);
+	}
+	
+	/**
+	 * 註冊頁面開啟時要載入的資料，必須在 AfterCompose 之前（例如 <code>@Init</code>）呼叫。
+	 * 所有註冊的 {@link PageLoad} 會在 {@link WorkerPool} 上與初始的 {@link #search()} 同時執行，
+	 * 全部完成之後依註冊順序 {@link PageLoad#apply(Object)}，最後一次 notify change 所有 property。
+	 */
+	protected void registerLoad(PageLoad<?> load) {
+		pageLoads.add(load);
 	}
 	
 	/**
@@ -105,6 +278,16 @@ public abstract class BaseEntityViewModel<T extends Entity> extends BaseViewMode
 	 */
 	protected abstract List<T> queryData() throws Exception;
 	
+	/**
+	 * 有時間限制的 {@link #queryData()}，參見 {@link #queryData(String, Map, int)}。
+	 * 預設直接呼叫 {@link #queryData()}，不作時間限制。
+	 * 
+	 * @param timeout 時間限制（秒），小於等於 0 代表沒有限制
+	 */
+	protected List<T> queryData(int timeout) throws Exception {
+		return queryData();
+	}
+	
 	/**
 	 * 重點：
 	 * <ul>
@@ -116,6 +299,25 @@ public abstract class BaseEntityViewModel<T extends Entity> extends BaseViewMode
 	//會作成 abstract 的原因是 BaseMaintainViewModel.selectData() 的實際邏輯太複雜
 	//真正共通要作的事情又太簡單，就乾脆算啦... [茶]
 	public abstract void selectData();
+	
+	/**
+	 * @return 資料列表元件選取的資料。projection 模式下會以 {@link #loadData(Object)} 讀取完整的 entity。
+	 */
+	protected T getSelectedData() throws Exception {
+		if (getProjectionColumns() == null) {
+			return getListModel().getSelection().iterator().next();
+		}
+		
+		return loadData(getProjectionModel().getSelection().iterator().next().getId());
+	}
+	
+	/**
+	 * 清除資料列表元件的選取。
+	 */
+	protected void clearSelection() {
+		dataStore.clearSelection();
+		projectionStore.clearSelection();
+	}
 
 	// ======== 搜尋區 ======== //
 	/**
@@ -126,6 +328,32 @@ public abstract class BaseEntityViewModel<T extends Entity> extends BaseViewMode
 		throw new UnsupportedOperationException("預設無此行為，請自行實作");
 	}
 	
+	/**
+	 * 有時間限制的 {@link #queryData(String, Map)}，超過時間應由資料庫中斷查詢並丟出 exception，
+	 * 例如 Hibernate 的 <code>Query.setTimeout(timeout)</code>。
+	 * 預設直接呼叫 {@link #queryData(String, Map)}，不作時間限制。
+	 * 
+	 * @param timeout 時間限制（秒），小於等於 0 代表沒有限制
+	 */
+	protected List<T> queryData(String hql, Map<String, Object> params, int timeout) throws Exception {
+		return queryData(hql, params);
+	}
+	
+	/**
+	 * @return 搜尋所屬的 {@link SearchBulkhead} tier，預設為 entity class 名稱。
+	 * 	成本相近的頁面可以回傳同一個 tier 來共用 permit。
+	 */
+	protected String getSearchTier() {
+		return entityClass.getName();
+	}
+	
+	/**
+	 * @return 搜尋的時間限制（秒），預設為 library property {@value #SEARCH_TIMEOUT} 的值，沒設定時為 0（沒有限制）
+	 */
+	protected int getSearchTimeout() {
+		return Library.getIntProperty(SEARCH_TIMEOUT, 0);
+	}
+	
 	/**
 	 * 在 {@link #resetSearch()} 中 {@link #constraint} 清空之後讓 child class 可以自訂一些操作的 method。
 	 */
@@ -140,29 +368,283 @@ public abstract class BaseEntityViewModel<T extends Entity> extends BaseViewMode
 	
 	@Command
 	public void search() {
-		StringBuffer hql = new StringBuffer("from " + entityClass.getSimpleName() + " where 1=1 ");
+		tryExecuteSearch();
+	}
+	
+	/**
+	 * 經過 {@link SearchBulkhead} 執行搜尋，拿不到 permit 時顯示系統忙碌的訊息。
+	 * override {@link #search()} 的 child class 應該以這個 method 取代 <code>super.search()</code>，
+	 * 並在回傳 false 時不要改變任何狀態。
+	 * 
+	 * @return false 代表搜尋被拒絕，資料列表沒有任何變動
+	 */
+	protected boolean tryExecuteSearch() {
+		SearchBulkhead bulkhead = SearchBulkhead.get(getSearchTier());
+		if (!bulkhead.tryAcquire()) {
+			MessageBoxUtil.info(I18nMessages.get("dtc.zk.error.search.busy"));
+			return false;
+		}
+		
+		long start = System.currentTimeMillis();
+		try {
+			executeSearch();
+		} finally {
+			bulkhead.release(System.currentTimeMillis() - start, getSearchTimeout());
+		}
+		return true;
+	}
+	
+	/**
+	 * 不經過 {@link SearchBulkhead} 直接重新搜尋。
+	 * 給存檔、刪除成功之後的重新整理使用：資料已經異動，資料列表不能因為系統忙碌而維持過期的內容。
+	 */
+	protected void refreshSearch() {
+		executeSearch();
+	}
+	
+	private void executeSearch() {
+		restoreIds = null;
+		restoreSelection = null;
+		
 		HashMap<String, Object> params = new HashMap<String, Object>();
-		recursiveBuild(hql, params, getConstraint(), "");	//一開始根本沒有 childname
+		boolean entity = getProjectionColumns() == null;
+		String hql = buildSearchHql(params, entity, entity);
+		long start = System.currentTimeMillis();
+		
+		if (getProjectionColumns() != null) {
+			searchProjection(hql, params);
+			recordStatistics(start, projectionStore.size());
+			afterSearch();
+			return;
+		}
 		
 		dataStore.clear();
 		try {
-			if (params.size() == 0) {
-				dataStore.addAll(queryData());
-			} else {
-				dataStore.addAll(queryData(hql.toString(), params));
+			List<T> result = params.size() == 0 && !hasJoin() ? 
+				queryData(getSearchTimeout()) : queryData(hql, params, getSearchTimeout());
+			if (isIdentityMapEnabled() && getVersionName() != null) {
+				result = IdentityMap.canonicalize(this, result);
 			}
+			dataStore.addAll(result);
 		} catch (Exception e) {
 			handleDaoException(e);
 		}
 		
+		recordStatistics(start, dataStore.size());
 		afterSearch();
 	}
 	
+	private void recordStatistics(long start, int rows) {
+		if (!SearchStatistics.isEnabled()) { return; }
+		
+		long elapsed = System.currentTimeMillis() - start;
+		TreeMap<String, String> shape = new TreeMap<String, String>();
+		collectShape(shape, getConstraint(), "");
+		SearchStatistics.record(entityClass, shape, elapsed, rows);
+	}
+	
+	/**
+	 * 以與 {@link #recursiveBuild(StringBuffer, HashMap, HashMap, String)} 相同的規則，
+	 * 收集有值的搜尋欄位與比對條件。
+	 */
+	@SuppressWarnings("unchecked")
+	private void collectShape(SortedMap<String, String> shape, HashMap<String, Object> valueMap, String childName) {
+		for (String key : valueMap.keySet()) {
+			Object value = valueMap.get(key);
+			
+			if (value == null) { continue; }
+			if (value instanceof String && StringUtils.isEmpty(value.toString())) { continue; }
+			
+			if (value instanceof HashMap) {
+				collectShape(shape, (HashMap<String, Object>)value, childName + key + ".");
+				continue;
+			}
+			
+			String tail = findRangeTail(key);
+			if (tail != null) {
+				shape.put(childName + key.substring(0, key.indexOf(tail)), SearchStatistics.RANGE);
+				continue;
+			}
+			
+			Constraint op = getConstraintMap().get(childName + key);
+			shape.put(childName + key, (op == null ? Constraint.EQUAL : op).name());
+		}
+	}
+	
+	private void searchProjection(String hql, HashMap<String, Object> params) {
+		String[] projection = getProjectionColumns();
+		String[] columns = new String[projection.length + 1];
+		columns[0] = getIdName();
+		System.arraycopy(projection, 0, columns, 1, projection.length);
+		
+		StringBuffer select = new StringBuffer("select ");
+		for (int i = 0; i < columns.length; i++) {
+			if (i > 0) { select.append(", "); }
+			select.append(resolvePath(columns[i]));
+		}
+		select.append(" ");
+		
+		projectionStore.clear();
+		try {
+			List<Object[]> result = queryProjection(select + hql, params, getSearchTimeout());
+			ArrayList<ProjectionRow> rows = new ArrayList<ProjectionRow>(result.size());
+			for (Object[] values : result) {
+				rows.add(new ProjectionRow(columns, values));
+			}
+			projectionStore.addAll(rows);
+		} catch (Exception e) {
+			handleDaoException(e);
+		}
+	}
+	
+	/**
+	 * @return projection 模式下要查詢的欄位（不含 id），null 代表不使用 projection 模式
+	 */
+	protected String[] getProjectionColumns() {
+		return null;
+	}
+	
+	/**
+	 * @return projection 模式的查詢結果，每一筆的欄位順序為 id 與 {@link #getProjectionColumns()}。
+	 * 	基本上就是呼叫 entity 對應的 find(String, Map)。
+	 */
+	protected List<Object[]> queryProjection(String hql, Map<String, Object> params) throws Exception {
+		throw new UnsupportedOperationException("預設無此行為，請自行實作");
+	}
+	
+	/**
+	 * 有時間限制的 {@link #queryProjection(String, Map)}，參見 {@link #queryData(String, Map, int)}。
+	 * 預設直接呼叫 {@link #queryProjection(String, Map)}，不作時間限制。
+	 */
+	protected List<Object[]> queryProjection(String hql, Map<String, Object> params, int timeout) throws Exception {
+		return queryProjection(hql, params);
+	}
+	
+	/**
+	 * @return id 對應的完整 entity，基本上就是呼叫 entity 對應的 findById()
+	 */
+	protected T loadData(Object id) throws Exception {
+		throw new UnsupportedOperationException("預設無此行為，請自行實作");
+	}
+	
 	/**
 	 * 在 {@link #search()} 完畢之後讓 child class 可以自訂一些操作的 method。
 	 */
 	protected void afterSearch() {}
+	
+	/**
+	 * @return 是否以 session 的 {@link IdentityMap} 合併搜尋結果，預設為 false。
+	 * 	啟用之後，同一個 session 中相同 id、version 的資料會是同一個 instance，
+	 * 	所以只適用於不會修改資料列表中 entity 的唯讀頁面。
+	 * 	{@link BaseMaintainViewModel} 的編輯區會直接寫入選取的 instance，存檔失敗時就會把沒存檔的值分享給其他頁面，
+	 * 	所以一律不啟用。
+	 * 	必須同時有 {@link #getVersionName()} 才會生效，否則無法分辨記憶體中的 instance 是否已經過期。
+	 */
+	protected boolean isIdentityMapEnabled() {
+		return false;
+	}
 
+	/**
+	 * 依照 {@link #constraint} 產生搜尋用的 HQL，搜尋值會放進 params。
+	 * 
+	 * @param fetch {@link #addFetchJoin(String, String)} 是否以 <code>left join fetch</code> 讀回
+	 * @param select 有 join 時是否加上 <code>select distinct root</code>。projection 查詢會自行加上 select，所以為 false
+	 */
+	private String buildSearchHql(HashMap<String, Object> params, boolean fetch, boolean select) {
+		StringBuffer hql = new StringBuffer();
+		
+		if (hasJoin()) {
+			if (select) {
+				hql.append("select distinct " + ROOT_ALIAS + " ");
+			}
+			hql.append("from " + entityClass.getSimpleName() + " " + ROOT_ALIAS + " ");
+			for (String path : fetchJoins.keySet()) {
+				hql.append(fetch ? "left join fetch " : "left join ");
+				hql.append(resolvePath(path) + " " + fetchJoins.get(path) + " ");
+			}
+			for (String path : filterJoins.keySet()) {
+				hql.append("join " + resolvePath(path) + " " + filterJoins.get(path) + " ");
+			}
+			LinkedHashMap<String, String> projectionJoins = getProjectionJoins();
+			for (String path : projectionJoins.keySet()) {
+				hql.append("left join " + resolvePath(path) + " " + projectionJoins.get(path) + " ");
+			}
+			hql.append("where 1=1 ");
+		} else {
+			hql.append("from " + entityClass.getSimpleName() + " where 1=1 ");
+		}
+		
+		recursiveBuild(hql, params, getConstraint(), "");	//一開始根本沒有 childname
+		return hql.toString();
+	}
+	
+	/**
+	 * 宣告 path 這個 association 會顯示在資料列表元件上，搜尋時以 <code>left join fetch</code> 一起讀回。
+	 * 
+	 * @param path association 的 attribute 名稱，可以是 nested，例如 <code>foo.bar</code>
+	 * @param alias HQL 中的 alias，不可與 entity 的 attribute 名稱或其他 alias 重複
+	 */
+	protected void addFetchJoin(String path, String alias) {
+		fetchJoins.put(path, alias);
+	}
+	
+	/**
+	 * 宣告 path 這個 association 只用於搜尋條件，搜尋時以 <code>join</code> 取代 implicit join。
+	 * 
+	 * @see #addFetchJoin(String, String)
+	 */
+	protected void addFilterJoin(String path, String alias) {
+		filterJoins.put(path, alias);
+	}
+	
+	private boolean hasJoin() {
+		return !fetchJoins.isEmpty() || !filterJoins.isEmpty() || !getProjectionJoins().isEmpty();
+	}
+	
+	/**
+	 * @return projection 模式下，nested 欄位沒有宣告 join 的 association（包含中間每一層），
+	 * 	以 {@value #PROJECTION_ALIAS} 加上 path 作為 alias。不是 projection 模式時為空的
+	 */
+	private LinkedHashMap<String, String> getProjectionJoins() {
+		LinkedHashMap<String, String> result = new LinkedHashMap<String, String>();
+		if (getProjectionColumns() == null) { return result; }
+		
+		for (String column : getProjectionColumns()) {
+			for (int dot = column.indexOf('.'); dot != -1; dot = column.indexOf('.', dot + 1)) {
+				String path = column.substring(0, dot);
+				if (fetchJoins.containsKey(path) || filterJoins.containsKey(path)) { continue; }
+				
+				result.put(path, PROJECTION_ALIAS + convertParamName(path));
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * 有宣告 join 時，將 attribute 名稱轉換成以 alias 開頭的 path：
+	 * 以最長的已宣告 association path 為準，都沒有的話就以 root alias 開頭。
+	 */
+	private String resolvePath(String field) {
+		if (!hasJoin()) { return field; }
+		
+		HashMap<String, String> joins = new HashMap<String, String>(fetchJoins);
+		joins.putAll(filterJoins);
+		joins.putAll(getProjectionJoins());
+		
+		String matchPath = null;
+		for (String path : joins.keySet()) {
+			if (field.startsWith(path + ".") && (matchPath == null || path.length() > matchPath.length())) {
+				matchPath = path;
+			}
+		}
+		
+		if (matchPath == null) {
+			return ROOT_ALIAS + "." + field;
+		}
+		
+		return joins.get(matchPath) + field.substring(matchPath.length());
+	}
+	
 	/**
 	 * 用遞迴的方式解決 children binding 的 search 問題。
 	 */
@@ -187,9 +669,14 @@ public abstract class BaseEntityViewModel<T extends Entity> extends BaseViewMode
 
 			// ==== 區間特別處理區 ==== //
 			//直接看 tail，無視 operatorMap
+			String tail = findRangeTail(key);
+			if (tail != null && isDicomDateField(childName + key.substring(0, key.indexOf(tail)))) {
+				appendDicomRange(hql, params, childName + key.substring(0, key.indexOf(tail)), tail, value);
+				continue;
+			}
 			if (key.endsWith(CONSTRAINT_FROM)) {
 				String realField = childName + key.substring(0, key.indexOf(CONSTRAINT_FROM));
-				hql.append("AND " + realField + " ");
+				hql.append("AND " + resolvePath(realField) + " ");
 				hql.append(Constraint.NOT_SMALLER.getOpString());
 				hql.append(" :" + paramName + " ");
 				params.put(paramName, magicConvert(value, Constraint.NOT_SMALLER));
@@ -197,7 +684,7 @@ public abstract class BaseEntityViewModel<T extends Entity> extends BaseViewMode
 			}
 			if (key.endsWith(CONSTRAINT_START)) {
 				String realField = childName + key.substring(0, key.indexOf(CONSTRAINT_START));
-				hql.append("AND " + realField + " ");
+				hql.append("AND " + resolvePath(realField) + " ");
 				hql.append(Constraint.NOT_SMALLER.getOpString());
 				hql.append(" :" + paramName + " ");
 				params.put(paramName, value);
@@ -205,7 +692,7 @@ public abstract class BaseEntityViewModel<T extends Entity> extends BaseViewMode
 			}
 			if (key.endsWith(CONSTRAINT_TO)) {
 				String realField = childName + key.substring(0, key.indexOf(CONSTRAINT_TO));
-				hql.append("AND " + realField + " ");
+				hql.append("AND " + resolvePath(realField) + " ");
 				hql.append(Constraint.NOT_BIGGER.getOpString());
 				hql.append(" :" + paramName + " ");
 				params.put(paramName, magicConvert(value, Constraint.NOT_BIGGER));
@@ -213,7 +700,7 @@ public abstract class BaseEntityViewModel<T extends Entity> extends BaseViewMode
 			}
 			if (key.endsWith(CONSTRAINT_END)) {
 				String realField = childName + key.substring(0, key.indexOf(CONSTRAINT_END));
-				hql.append("AND " + realField + " ");
+				hql.append("AND " + resolvePath(realField) + " ");
 				hql.append(Constraint.NOT_BIGGER.getOpString());
 				hql.append(" :" + paramName + " ");
 				params.put(paramName, value);
@@ -223,12 +710,12 @@ public abstract class BaseEntityViewModel<T extends Entity> extends BaseViewMode
 				//就是把 _between 轉成 _from 跟 _to，懶得再抽共用 method 了（才兩次... 才兩次阿  [逃]）
 				String realField = childName + key.substring(0, key.indexOf(CONSTRAINT_BETWEEN));
 				String newFrom = convertParamName(realField + CONSTRAINT_FROM);
-				hql.append("AND " + realField + " ");
+				hql.append("AND " + resolvePath(realField) + " ");
 				hql.append(Constraint.NOT_SMALLER.getOpString());
 				hql.append(" :" + newFrom + " ");
 				params.put(newFrom, magicConvert(value, Constraint.NOT_SMALLER));
 				String newTo = convertParamName(realField + CONSTRAINT_TO);
-				hql.append("AND " + realField + " ");
+				hql.append("AND " + resolvePath(realField) + " ");
 				hql.append(Constraint.NOT_BIGGER.getOpString());
 				hql.append(" :" + newTo + " ");
 				params.put(newTo, magicConvert(value, Constraint.NOT_BIGGER));
@@ -236,13 +723,30 @@ public abstract class BaseEntityViewModel<T extends Entity> extends BaseViewMode
 			}
 			// ======== //
 			
-			hql.append("AND " + field + " ");
 			Constraint op = opMap.get(field);
 
 			if (op == null) {	//沒有指定 operator 就是等於
 				op = Constraint.EQUAL;
 			}
-
+			
+			if (op == Constraint.CONTAINS) {
+				Set<Object> ids = searchTextIndex(field, value.toString());
+				if (ids == null || ids.size() > getContainsIdLimit()) {
+					//跟索引一樣不分大小寫
+					hql.append("AND lower(" + resolvePath(field) + ")" + Constraint.LIKE.getOpString() + ":" + paramName + " ");
+					params.put(paramName, "%" + value.toString().toLowerCase() + "%");
+					continue;
+				} else if (ids.isEmpty()) {
+					hql.append("AND 1 = 0 ");
+					continue;
+				} else {
+					hql.append("AND " + resolvePath(getIdName()) + op.getOpString() + "(:" + paramName + ") ");
+					params.put(paramName, ids);
+					continue;
+				}
+			}
+			
+			hql.append("AND " + resolvePath(field) + " ");
 			hql.append(op.getOpString());
 			
 			switch(op) {
@@ -259,7 +763,8 @@ public abstract class BaseEntityViewModel<T extends Entity> extends BaseViewMode
 			case NOT_EQUAL:
 				params.put(paramName, value);
 				break;
-			
+			default:
+				break;
 			}
 			hql.append(" :" + paramName + " ");
 		}
@@ -285,18 +790,647 @@ public abstract class BaseEntityViewModel<T extends Entity> extends BaseViewMode
 		}
 		return obj;
 	}
+	
+	// ==== 文字索引區 ==== //
+	/**
+	 * @return 以 {@link TextIndex} 支援 {@link Constraint#CONTAINS} 的欄位，預設為 null（沒有）
+	 */
+	protected String[] getIndexedFields() {
+		return null;
+	}
+	
+	/**
+	 * @return 建立 field 索引用的所有資料，每一筆的內容為 id 與 field 值。
+	 * 	預設以 {@link #queryProjection(String, Map)} 查詢 <code>select id, field from Entity</code>。
+	 */
+	protected List<Object[]> queryTextIndex(String field) throws Exception {
+		String hql = "select " + getIdName() + ", " + field + " from " + entityClass.getSimpleName();
+		return queryProjection(hql, new HashMap<String, Object>());
+	}
+	
+	/**
+	 * @return 包含 value 的 id，field 沒有宣告在 {@link #getIndexedFields()}、索引建立失敗或建立期間被 invalidate 時為 null
+	 */
+	private Set<Object> searchTextIndex(String field, String value) {
+		if (getIndexedFields() == null || !Arrays.asList(getIndexedFields()).contains(field)) { return null; }
+		
+		TextIndex index = TextIndex.get(entityClass, field);
+		if (!index.isBuilt()) {
+			synchronized (index) {
+				if (!index.isBuilt()) {
+					//beginBuild() 要在查詢之前，查詢期間的存檔才會排隊套用
+					long token = index.beginBuild();
+					try {
+						index.build(token, queryTextIndex(field));
+					} catch (Exception e) {
+						e.printStackTrace();
+						return null;
+					}
+				}
+			}
+		}
+		return index.search(value);
+	}
+	
+	/**
+	 * @return {@link Constraint#CONTAINS} 轉成 <code>id in (:foo)</code> 時最多幾個 id，超過的話改用不分大小寫的 like。
+	 * 	預設為 1000（Oracle IN list 的上限）
+	 */
+	protected int getContainsIdLimit() {
+		return 1000;
+	}
+	
+	/**
+	 * 捨棄 {@link #getIndexedFields()} 的索引，下一次搜尋時重新以 {@link #queryTextIndex(String)} 建立。
+	 * 資料有不經過 view model 的異動時使用。
+	 */
+	protected void invalidateTextIndex() {
+		if (getIndexedFields() == null) { return; }
+		
+		for (String field : getIndexedFields()) {
+			TextIndex.get(entityClass, field).invalidate();
+		}
+	}
+	
+	/**
+	 * 存檔、刪除之後更新 {@link #getIndexedFields()} 的索引。
+	 * 只有經過 view model 的寫入會呼叫，其他的異動參見 {@link #invalidateTextIndex()}。
+	 */
+	void updateTextIndex(T data, EntityChangeBus.ChangeType type) {
+		if (getIndexedFields() == null || data == null) { return; }
+		
+		Object id = getEntityId(data);
+		for (String field : getIndexedFields()) {
+			TextIndex index = TextIndex.get(entityClass, field);
+			if (type == EntityChangeBus.ChangeType.REMOVE) {
+				index.remove(id);
+				continue;
+			}
+			
+			Object text = readField(data, field);
+			index.put(id, text == null || text == UNKNOWN ? null : text.toString());
+		}
+	}
+	// ======== //
+	
+	// ==== DICOM 日期區 ==== //
+	/**
+	 * @return 以字串儲存 DICOM 日期（<code>yyyyMMddHHmmss.SSSSSS</code>）的欄位，預設為 null（沒有）
+	 */
+	protected String[] getDicomDateFields() {
+		return null;
+	}
+	
+	private boolean isDicomDateField(String field) {
+		return getDicomDateFields() != null && Arrays.asList(getDicomDateFields()).contains(field);
+	}
+	
+	/**
+	 * DICOM 日期字串的區間：下限為 <code>&gt;=</code> 前綴、上限為 <code>&lt;</code> 前綴的下一個時間單位，
+	 * 讓資料庫可以直接使用 index 作 range scan。
+	 */
+	private void appendDicomRange(StringBuffer hql, HashMap<String, Object> params, String field, String tail, Object value) {
+		if (!tail.equals(CONSTRAINT_TO) && !tail.equals(CONSTRAINT_END)) {
+			String paramName = convertParamName(field + CONSTRAINT_FROM);
+			hql.append("AND " + resolvePath(field) + " ");
+			hql.append(Constraint.NOT_SMALLER.getOpString());
+			hql.append(" :" + paramName + " ");
+			params.put(paramName, DicomDateToStringConverter.toLowerBound(value));
+		}
+		if (!tail.equals(CONSTRAINT_FROM) && !tail.equals(CONSTRAINT_START)) {
+			String paramName = convertParamName(field + CONSTRAINT_TO);
+			hql.append("AND " + resolvePath(field) + " ");
+			hql.append(Constraint.SMALLER.getOpString());
+			hql.append(" :" + paramName + " ");
+			params.put(paramName, DicomDateToStringConverter.toUpperBound(value));
+		}
+	}
+	// ======== //
+	
+	private static String findRangeTail(String key) {
+		for (String candidate : RANGE_TAILS) {
+			if (key.endsWith(candidate)) {
+				return candidate;
+			}
+		}
+		return null;
+	}
+	
 	// ======== 搜尋區結束 ======== //
 	
+	// ======== 匯出區 ======== //
+	private static final int DEFAULT_EXPORT_CHUNK_SIZE = 500;
+	
+	@Command
+	public void export() {
+		SearchBulkhead bulkhead = SearchBulkhead.get(getSearchTier());
+		if (!bulkhead.tryAcquire()) {
+			MessageBoxUtil.info(I18nMessages.get("dtc.zk.error.search.busy"));
+			return;
+		}
+		
+		long start = System.currentTimeMillis();
+		try {
+			executeExport();
+		} finally {
+			bulkhead.release(System.currentTimeMillis() - start, getExportTimeout());
+		}
+	}
+	
+	private void executeExport() {
+		HashMap<String, Object> params = new HashMap<String, Object>();
+		String hql = buildSearchHql(params, false, true);	//scroll 不適合 fetch collection
+		
+		try {
+			final File file = File.createTempFile("dtc-export", ".csv");
+			final CsvWriter csv = new CsvWriter(
+				new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))
+			);
+			
+			try {
+				csv.writeBom();
+				String[] headers = getExportHeaders();
+				if (headers != null) {
+					csv.writeRow(headers);
+				}
+				
+				scrollData(hql, params, getExportChunkSize(), getExportTimeout(), new RowCallback<T>() {
+					@Override
+					public void handle(T data) throws Exception {
+						csv.writeRow(getExportRow(data));
+					}
+				});
+			} catch (Exception e) {
+				csv.close();
+				file.delete();
+				throw e;
+			}
+			
+			csv.close();
+			Filedownload.save(new AMedia(getExportFileName(), "csv", "text/csv", new TempFileInputStream(file)));
+		} catch (Exception e) {
+			handleDaoException(e);
+		}
+	}
+	
+	/**
+	 * 以 HQL 逐筆讀取資料並交給 callback，基本上就是：
+	 * <pre>
+	 * ScrollableResults results = session.createQuery(hql).setProperties(params)
+	 * 	.setFetchSize(chunkSize).scroll(ScrollMode.FORWARD_ONLY);
+	 * </pre>
+	 * 然後每 chunkSize 筆作一次 session.clear()，讓已經處理過的資料可以被回收。
+	 */
+	protected void scrollData(String hql, Map<String, Object> params, int chunkSize, RowCallback<T> callback) throws Exception {
+		throw new UnsupportedOperationException("預設無此行為，請自行實作");
+	}
+	
+	/**
+	 * 有時間限制的 {@link #scrollData(String, Map, int, RowCallback)}，參見 {@link #queryData(String, Map, int)}。
+	 * 預設直接呼叫 {@link #scrollData(String, Map, int, RowCallback)}，不作時間限制。
+	 */
+	protected void scrollData(String hql, Map<String, Object> params, int chunkSize, int timeout, RowCallback<T> callback) throws Exception {
+		scrollData(hql, params, chunkSize, callback);
+	}
+	
+	/**
+	 * @return 匯出的時間限制（秒），預設與 {@link #getSearchTimeout()} 相同
+	 */
+	protected int getExportTimeout() {
+		return getSearchTimeout();
+	}
+	
+	/**
+	 * @return 匯出時每次從資料庫讀取的筆數
+	 */
+	protected int getExportChunkSize() {
+		return DEFAULT_EXPORT_CHUNK_SIZE;
+	}
+	
+	/**
+	 * @return 匯出檔案的標題列，null 代表沒有標題列
+	 */
+	protected String[] getExportHeaders() {
+		return null;
+	}
+	
+	/**
+	 * @return 匯出檔案中 data 這一筆的各欄位值
+	 */
+	protected Object[] getExportRow(T data) {
+		throw new UnsupportedOperationException("預設無此行為，請自行實作");
+	}
+	
+	protected String getExportFileName() {
+		return entityClass.getSimpleName() + ".csv";
+	}
+	
+	/**
+	 * 下載完畢（close）之後就刪除暫存檔。
+	 */
+	private static class TempFileInputStream extends FileInputStream {
+		private final File file;
+		
+		TempFileInputStream(File file) throws IOException {
+			super(file);
+			this.file = file;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			super.close();
+			file.delete();
+		}
+	}
+	// ======== 匯出區結束 ======== //
+	
+	// ======== 即時更新區 ======== //
+	/**
+	 * @return 是否接收 {@link EntityChangeBus} 的異動通知，預設為 false
+	 */
+	protected boolean isLiveRefresh() {
+		return false;
+	}
+	
+	/**
+	 * 在 desktop 的 event 中套用其他 desktop 發出的異動。
+	 */
+	void applyChange(T data, EntityChangeBus.ChangeType type) {
+		if (getProjectionColumns() != null) { return; }
+		
+		Object id = getEntityId(data);
+		int index = -1;
+		for (int i = 0; i < dataStore.size(); i++) {
+			if (id != null && id.equals(getEntityId(dataStore.get(i)))) {
+				index = i;
+				break;
+			}
+		}
+		
+		boolean accept = type == EntityChangeBus.ChangeType.UPSERT && acceptChange(data);
+		
+		if (index >= 0) {
+			if (accept) {
+				dataStore.set(index, data);
+			} else {
+				dataStore.remove(index);
+			}
+		} else if (accept) {
+			dataStore.add(data);
+		}
+	}
+	
+	/**
+	 * 判斷異動的資料是否符合目前的搜尋條件。
+	 * 預設以 {@link #getConstraint()}、{@link #getConstraintMap()} 在記憶體中比對，
+	 * 無法判斷的條件一律視為符合。
+	 */
+	protected boolean acceptChange(T data) {
+		return matchConstraint(data, getConstraint(), "");
+	}
+	
+	@SuppressWarnings("unchecked")
+	private boolean matchConstraint(T data, HashMap<String, Object> valueMap, String childName) {
+		for (String key : valueMap.keySet()) {
+			Object value = valueMap.get(key);
+			
+			if (value == null) { continue; }
+			if (value instanceof String && StringUtils.isEmpty(value.toString())) { continue; }
+			
+			if (value instanceof HashMap) {
+				if (!matchConstraint(data, (HashMap<String, Object>)value, childName + key + ".")) {
+					return false;
+				}
+				continue;
+			}
+			
+			String tail = findRangeTail(key);
+			if (tail == null) {
+				String field = childName + key;
+				Constraint op = getConstraintMap().get(field);
+				if (!match(readField(data, field), op == null ? Constraint.EQUAL : op, value)) {
+					return false;
+				}
+				continue;
+			}
+			
+			String field = childName + key.substring(0, key.indexOf(tail));
+			Object actual = readField(data, field);
+			boolean lower = !tail.equals(CONSTRAINT_TO) && !tail.equals(CONSTRAINT_END);
+			boolean upper = !tail.equals(CONSTRAINT_FROM) && !tail.equals(CONSTRAINT_START);
+			boolean convert = !tail.equals(CONSTRAINT_START) && !tail.equals(CONSTRAINT_END);
+			
+			if (isDicomDateField(field)) {
+				if (lower && !match(actual, Constraint.NOT_SMALLER, DicomDateToStringConverter.toLowerBound(value))) {
+					return false;
+				}
+				if (upper && !match(actual, Constraint.SMALLER, DicomDateToStringConverter.toUpperBound(value))) {
+					return false;
+				}
+				continue;
+			}
+			
+			if (lower && !match(actual, Constraint.NOT_SMALLER, convert ? magicConvert(value, Constraint.NOT_SMALLER) : value)) {
+				return false;
+			}
+			if (upper && !match(actual, Constraint.NOT_BIGGER, convert ? magicConvert(value, Constraint.NOT_BIGGER) : value)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	private static final Object UNKNOWN = new Object();
+	
+	private static Object readField(Object data, String field) {
+		try {
+			return Fields.getByCompound(data, field);
+		} catch (Exception e) {
+			return UNKNOWN;
+		}
+	}
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static boolean match(Object actual, Constraint op, Object value) {
+		if (actual == UNKNOWN) { return true; }
+		
+		switch(op) {
+		case EQUAL:
+			return value.equals(actual);
+		case NOT_EQUAL:
+			return !value.equals(actual);
+		case LIKE:
+			return actual != null && actual.toString().contains(value.toString());
+		case CONTAINS:
+			return actual != null && actual.toString().toLowerCase().contains(value.toString().toLowerCase());
+		default:
+			break;
+		}
+		
+		if (!(actual instanceof Comparable) || !actual.getClass().isInstance(value)) { return true; }
+		
+		int compare = ((Comparable)actual).compareTo(value);
+		switch(op) {
+		case SMALLER:
+			return compare < 0;
+		case BIGGER:
+			return compare > 0;
+		case NOT_BIGGER:
+			return compare <= 0;
+		case NOT_SMALLER:
+			return compare >= 0;
+		default:
+			return true;
+		}
+	}
+	// ======== 即時更新區結束 ======== //
+	
+	// ==== entity metadata 區 ==== //
+	/**
+	 * @return entity 的 id attribute 名稱，預設為 <code>id</code>
+	 */
+	protected String getIdName() {
+		return "id";
+	}
+	
+	/**
+	 * @return entity 作為 optimistic lock 的 version attribute 名稱，預設為 null（沒有 version）
+	 */
+	protected String getVersionName() {
+		return null;
+	}
+	
+	/**
+	 * @return data 的 id 值，預設以 {@link #getIdName()} 對應的 getter 取得
+	 */
+	protected Object getEntityId(T data) {
+		return getProperty(data, getIdName());
+	}
+	
+	/**
+	 * 以 getter 取得 data 的 attribute 值，找不到 getter 時丟出 {@link IllegalArgumentException}。
+	 */
+	protected static Object getProperty(Object data, String name) {
+		try {
+			return Fields.get(data, name);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException(data.getClass().getName() + " 沒有 " + name + " 的 getter", e);
+		}
+	}
+	// ======== //
+	
+	// ==== 序列化區 ==== //
+	/**
+	 * 資料列表只寫出 id 與選取資料的 id，不寫出整個 object graph。
+	 * projection 模式則什麼都不寫，還原時重新搜尋。
+	 * {@link #currentData} 已經存檔過的話也只寫 id，還沒存檔的新資料才寫出整個 object。
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeBoolean(dataStore.isMultiple());
+		
+		Object currentId = restoreCurrentId != null ? restoreCurrentId : 
+			currentData == null ? null : getEntityId(currentData);
+		out.writeObject(currentId);
+		out.writeObject(currentId == null ? currentData : null);
+		
+		if (restoreIds != null) {	//還沒還原過就又被序列化
+			out.writeObject(restoreSelection == null ? null : new ArrayList<Object>(restoreIds));
+			out.writeObject(restoreSelection == null ? null : new ArrayList<Object>(restoreSelection));
+			return;
+		}
+		
+		if (getProjectionColumns() != null) {
+			out.writeObject(null);
+			out.writeObject(null);
+			return;
+		}
+		
+		ArrayList<Object> ids = new ArrayList<Object>(dataStore.size());
+		ArrayList<Object> selection = new ArrayList<Object>();
+		for (T data : dataStore) {
+			ids.add(getEntityId(data));
+		}
+		for (T data : dataStore.getSelection()) {
+			selection.add(getEntityId(data));
+		}
+		out.writeObject(ids);
+		out.writeObject(selection);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		
+		dataStore = new ListModelList<T>();
+		dataStore.setMultiple(in.readBoolean());
+		projectionStore = new ListModelList<ProjectionRow>();
+		projectionStore.setMultiple(dataStore.isMultiple());
+		pageLoads = new ArrayList<PageLoad<?>>();
+		
+		restoreCurrentId = in.readObject();
+		currentData = (T)in.readObject();
+		restoreIds = (List<Object>)in.readObject();
+		restoreSelection = (List<Object>)in.readObject();
+		if (restoreIds == null) {	//projection 模式
+			restoreIds = new ArrayList<Object>();
+		}
+	}
+	
+	/**
+	 * 在反序列化後第一次取用資料列表或 {@link #currentData} 時（在 ZK 的 execution 中）還原資料。
+	 * 因為是在 getter 中執行，DAO 的錯誤只會記錄下來、不顯示訊息視窗。
+	 */
+	final void restore() {
+		if (restoreIds == null && restoreCurrentId == null) { return; }
+		
+		//跟 search() 一樣要經過 SearchBulkhead。拿不到 permit 就維持待還原的狀態，下次取用時再試
+		SearchBulkhead bulkhead = SearchBulkhead.get(getSearchTier());
+		if (!bulkhead.tryAcquire()) { return; }
+		
+		long start = System.currentTimeMillis();
+		try {
+			executeRestore();
+		} finally {
+			bulkhead.release(System.currentTimeMillis() - start, getSearchTimeout());
+		}
+	}
+	
+	private void executeRestore() {
+		List<Object> ids = restoreIds;
+		List<Object> selection = restoreSelection;
+		Object currentId = restoreCurrentId;
+		restoreIds = null;
+		restoreSelection = null;
+		restoreCurrentId = null;
+		
+		restoring = true;
+		try {
+			if (ids != null) {	//已經重新搜尋過的話就只剩 currentData 要還原
+				restoreList(ids, selection);
+			}
+			if (currentId != null) {
+				currentData = findOrLoad(currentId);
+			}
+			afterRestore();
+		} finally {
+			restoring = false;
+		}
+	}
+	
+	private void restoreList(List<Object> ids, List<Object> selection) {
+		if (getProjectionColumns() != null || selection == null) {
+			executeSearch();
+			return;
+		}
+		
+		try {
+			dataStore.addAll(loadData(ids));
+		} catch (UnsupportedOperationException e) {
+			executeSearch();
+			return;
+		} catch (Exception e) {
+			handleDaoException(e);
+			return;
+		}
+		
+		for (T data : dataStore) {
+			if (selection.contains(getEntityId(data))) {
+				dataStore.addToSelection(data);
+			}
+		}
+	}
+	
+	/**
+	 * @return 資料列表中 id 相同的 instance，沒有的話以 {@link #loadData(Object)} 讀取，失敗時為 null
+	 */
+	private T findOrLoad(Object id) {
+		for (T data : dataStore) {
+			if (id.equals(getEntityId(data))) { return data; }
+		}
+		
+		try {
+			return loadData(id);
+		} catch (Exception e) {
+			handleDaoException(e);
+			return null;
+		}
+	}
+	
+	/**
+	 * 反序列化之後，資料列表與 {@link #currentData} 還原完畢時呼叫，讓 child class 還原自己只序列化 id 的狀態。
+	 * 在 getter 中執行，所以不能顯示訊息視窗（{@link #handleDaoException(Exception)} 在此期間只會記錄錯誤）。
+	 * child class override 時必須呼叫 super。
+	 */
+	protected void afterRestore() {}
+	
+	@Override
+	protected void handleDaoException(Exception e) {
+		if (restoring) {
+			e.printStackTrace();
+			return;
+		}
+		super.handleDaoException(e);
+	}
+	
+	/**
+	 * @return ids 對應的完整 entity，順序與 ids 相同，找不到的 id 會略過。反序列化之後用來還原資料列表。
+	 * 	預設以 {@link #queryData(String, Map)} 一次查詢 <code>from Entity where id in (:ids)</code>
+	 * 	（每 {@value #IN_LIST_SIZE} 個 id 一次，Oracle IN list 的上限），
+	 * 	所以 {@link #queryData(String, Map)} 必須支援 collection 型態的參數。
+	 * 	丟出 {@link UnsupportedOperationException} 時會改為重新搜尋。
+	 */
+	protected List<T> loadData(List<Object> ids) throws Exception {
+		ArrayList<Object> keys = new ArrayList<Object>(ids.size());
+		for (Object id : ids) {
+			if (id != null) {
+				keys.add(id);
+			}
+		}
+		
+		String hql = "from " + entityClass.getSimpleName() + " where " + getIdName() + " in (:ids)";
+		HashMap<Object, T> loaded = new HashMap<Object, T>();
+		for (int from = 0; from < keys.size(); from += IN_LIST_SIZE) {
+			HashMap<String, Object> params = new HashMap<String, Object>();
+			params.put("ids", new ArrayList<Object>(keys.subList(from, Math.min(keys.size(), from + IN_LIST_SIZE))));
+			for (T data : queryData(hql, params)) {
+				loaded.put(getEntityId(data), data);
+			}
+		}
+		
+		ArrayList<T> result = new ArrayList<T>(keys.size());
+		for (Object id : keys) {
+			T data = loaded.get(id);
+			if (data != null) {
+				result.add(data);
+			}
+		}
+		return result;
+	}
+	// ======== //
+	
 	// ==== getter / setter 區 ==== //
 	public final ListModelList<T> getListModel() {
+		restore();
 		return dataStore;
 	}
+	
+	/**
+	 * @return projection 模式下資料列表元件要顯示的資料
+	 */
+	public final ListModelList<ProjectionRow> getProjectionModel() {
+		restore();
+		return projectionStore;
+	}
 		
 	public final T getCurrentData() {
+		restore();
 		return currentData;
 	}
 
 	public final void setCurrentData(T currentData) {
+		restoreCurrentId = null;	//直接指定的話就不用再還原了
 		this.currentData = currentData;
 	}
 
@@ -1,20 +1,35 @@
 package com.dtc.common.zk.viewmodel;
 
-import org.zkoss.bind.BindUtils;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
 import org.zkoss.bind.FormStatus;
 import org.zkoss.bind.annotation.AfterCompose;
+import org.zkoss.bind.annotation.BindingParam;
 import org.zkoss.bind.annotation.Command;
 import org.zkoss.bind.annotation.Init;
 import org.zkoss.bind.annotation.NotifyChange;
-import org.zkoss.util.resource.Labels;
-import org.zkoss.zk.ui.event.Event;
-import org.zkoss.zk.ui.event.EventListener;
-import org.zkoss.zul.Messagebox;
 
 import com.dtc.boundary.Entity;
+import com.dtc.common.zk.bind.DirtyField;
 import com.dtc.common.zk.bind.DtcForm;
 import com.dtc.common.zk.exception.UIException;
+import com.dtc.common.zk.exception.UpdateFailedByVersion;
+import com.dtc.common.zk.exception.ValidationException;
+import com.dtc.common.zk.exception.ValidationResult;
+import com.dtc.common.zk.util.ConfirmCallback;
+import com.dtc.common.zk.util.I18nMessages;
 import com.dtc.common.zk.util.MessageBoxUtil;
+import com.dtc.common.zk.viewmodel.EntityChangeBus.ChangeType;
 
 /**
  * 「單一 entity 資料維護」頁面的基礎 ViewModel，以 {@link BaseEntityViewModel} 為基礎再添加維護功能。
@@ -30,8 +45,42 @@ import com.dtc.common.zk.util.MessageBoxUtil;
  * 	<li>控制編輯區是否顯示的邏輯，參見 {@link #isEditorVisible()}</li>
  * 	<li>資料列表元件選取某筆資料、按鈕按下的共通邏輯。各頁面特有的邏輯則在 do____ 各自實作，例如 {@link #doAdd()}</li>
  * 	<li>存檔、刪除時可處理 {@link #doSave()}、{@link #doDelete()} 拋出的 {@link UIException}。</li>
+ * 	<li>存檔、刪除前可在 {@link #doValidate(ValidationResult)}、{@link #doValidateDelete(ValidationResult)} 一次回報所有驗證錯誤</li>
+ * 	<li>存檔時可以用 {@link #getDirtyFields()} 知道編輯區實際異動的 field</li>
+ * 	<li>存檔、刪除成功後透過 {@link EntityChangeBus} 通知其他 desktop</li>
+ * 	<li>如果 {@link #isPrefetchAdjacent()} 回傳 true，選取某筆資料之後會在背景預先讀取前後兩筆在編輯區用到的內容，參見 {@link #queryPrefetch(Object)}</li>
  * </ul>
  * <p>
+ * 如果 {@link #isPartialUpdate()} 回傳 true，修改既有資料時不會呼叫 {@link #doSave()}，
+ * 而是只更新有異動的 field：
+ * <pre>
+ * update Foo set a = :a, b = :b where id = :id
+ * </pre>
+ * 並交給 {@link #executeUpdate(String, Map)} 執行。
+ * 如果 {@link #getVersionName()} 不是 null，則會額外作 optimistic lock 的檢查：
+ * <pre>
+ * update Foo set a = :a, version = version + 1 where id = :id and version = :version
+ * </pre>
+ * 更新筆數為 0 時會視為 {@link UpdateFailedByVersion}。
+ * <p>
+ * <h1>多筆編輯</h1>
+ * 如果資料列表元件本身可以直接編輯（例如 grid 內的 textbox 直接 <code>@bind(each.foo)</code>），
+ * 則在編輯元件的 onFocus 呼叫 beginModify 先備份該筆資料、在 onChange 呼叫 modifyData 標記該筆資料有異動：
+ * <pre>
+ * onFocus="@command('beginModify', data=each)" onChange="@command('modifyData', data=each)"
+ * </pre>
+ * ZK 在同一個 event 中會先作 <code>@bind</code> 的 save 才執行 command，
+ * 所以 modifyData 時資料已經是修改後的值，cancelAll 還原的依據必須在 beginModify 時就先備份。
+ * 沒有先 beginModify 的資料會在 modifyData 時才備份，此時 cancelAll 無法還原第一次的修改。
+ * 之後以 saveAll 一次交給 {@link #doSaveAll(Collection)} 存檔、存檔成功後只作一次 {@link #search()}；
+ * 或是以 cancelAll 將所有異動的資料還原。
+ * <p>
+ * <h1>多筆刪除</h1>
+ * 資料列表元件為多選（{@link org.zkoss.zul.ListModelList#setMultiple(boolean)}）時，
+ * deleteSelected 會對所有選取的資料只確認一次，然後一次交給 {@link #doDeleteAll(Collection)}。
+ * 刪除成功的資料直接從資料列表移除，不會重新 {@link #search()}；
+ * 刪除失敗的資料則會逐筆列出原因。
+ * <p>
  * ZUL 對應 command 清單：
  * <ul>
  * 	<li>資料列表選取某筆資料：selectData</li>
@@ -56,39 +105,73 @@ import com.dtc.common.zk.util.MessageBoxUtil;
  * @author MontyPan
  */
 public abstract class BaseMaintainViewModel<T extends Entity> extends BaseEntityViewModel<T> {
-	private T backupData;
+	private static final long serialVersionUID = 1L;
+	private static final int MAX_PREFETCH = 4;
+	
+	//就是資料庫中的值，序列化時不保留，還原 currentData 之後重新 clone，參見 afterRestore()
+	private transient T backupData;
 	
 	private String status;
 	private boolean newFlag;
 	private boolean editFlag;
 	private boolean deleteFlag;
 	private DtcForm editorForm = new DtcForm();
+	private Map<String, DirtyField> dirtyFields = Collections.emptyMap();
+	
+	//key 為有異動的資料、value 為第一次異動前的備份。
+	//資料在當 key 的期間還會繼續被修改，所以不能依賴 entity 的 equals() / hashCode()，
+	//以 instance 為 key，另外用 modifiedOrder 保留標記的順序。
+	//序列化時只保留有異動的資料本身（modifiedOrder），備份到 cancelAll() 時才重新讀取
+	private transient IdentityHashMap<T, T> modifiedData = new IdentityHashMap<T, T>();
+	private ArrayList<T> modifiedOrder = new ArrayList<T>();
+	
+	//beginModify 時的備份，key 為資料列表中的 instance。還沒真的異動，所以序列化時不保留
+	private transient IdentityHashMap<T, T> modifyBackup;
+	
+	private List<T> pendingDelete;
+	
+	//key 為資料的 id、value 為 queryPrefetch() 的結果。序列化時不保留
+	private transient Prefetcher<Object, Object> prefetcher;
+		
+	//==== Confirm 的 callback 區 ====//
+	private ConfirmCallback selectConfirm = new ConfirmCallback() {
+		private static final long serialVersionUID = 1L;
 		
-	//==== Confirm 的 EventListener 區 ====//
-	private EventListener<Event> selectConfirm = new EventListener<Event>() {
 		@Override
-		public void onEvent(Event event) throws Exception {
-			if(Messagebox.ON_YES.equals(event.getName())) {
-				processSelect();
-			}
+		public void onYes() throws Exception {
+			processSelect();
 		}
 	};
 	
-	private EventListener<Event> cancelConfirm = new EventListener<Event>() {
+	private ConfirmCallback cancelConfirm = new ConfirmCallback() {
+		private static final long serialVersionUID = 1L;
+		
 		@Override
-		public void onEvent(Event event) throws Exception {
-			if(Messagebox.ON_YES.equals(event.getName())) {
-				processCancel();
-			}
+		public void onYes() throws Exception {
+			processCancel();
 		}
 	};
 	
-	private EventListener<Event> deleteConfirm = new EventListener<Event>() {
+	private ConfirmCallback deleteConfirm = new ConfirmCallback() {
+		private static final long serialVersionUID = 1L;
+		
 		@Override
-		public void onEvent(Event event) throws Exception {
-			if(Messagebox.ON_YES.equals(event.getName())) {
-				processDelete();
-			}
+		public void onYes() throws Exception {
+			processDelete();
+		}
+	};
+	
+	private ConfirmCallback deleteSelectedConfirm = new ConfirmCallback() {
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		public void onYes() throws Exception {
+			processDeleteSelected();
+		}
+		
+		@Override
+		public void onNo() throws Exception {
+			pendingDelete = null;
 		}
 	};
 	// ======== //
@@ -112,17 +195,25 @@ public abstract class BaseMaintainViewModel<T extends Entity> extends BaseEntity
 	@Command
 	public void selectData() {
 		if (editFlag && getEditorForm().isDirty()) {	//在編輯中又選了資料
-			MessageBoxUtil.confirm(Labels.getLabel("dtc.zk.confirm.editorDirty"), selectConfirm);
+			MessageBoxUtil.confirm(I18nMessages.get("dtc.zk.confirm.editorDirty"), selectConfirm);
 			return;
 		}
 		processSelect();
 	}
 	
 	private void processSelect() {
-		currentData = getListModel().getSelection().iterator().next();
+		try {
+			currentData = getSelectedData();
+		} catch (Exception e) {
+			handleDaoException(e);
+			return;
+		}
+		
+		//先放進背景讀好的內容，備份才會包含它們
+		applyPrefetched(currentData);
 		backupData = currentData.<T>cloneEntity();
 		
-		status = Labels.getLabel("dtc.zk.ui.status.update");
+		status = I18nMessages.get("dtc.zk.ui.status.update");
 		newFlag = false;
 		editFlag = true;
 		deleteFlag = true;
@@ -130,7 +221,118 @@ public abstract class BaseMaintainViewModel<T extends Entity> extends BaseEntity
 		doSelectData();
 		refreshStatus();
 		notifyChange("currentData");
+		
+		if (isPrefetchAdjacent() && getProjectionColumns() == null) {
+			prefetchAdjacent(getListModel().indexOf(currentData));
+		}
+	}
+	
+	/**
+	 * 編輯區（<code>@save(vm.currentData, before='save')</code>）與多筆編輯都會直接修改資料列表中的 instance，
+	 * 存檔失敗或取消時該 instance 的 id、version 不變，卻留著沒有存檔的值，
+	 * 如果放進 {@link IdentityMap} 就會在下次搜尋時取代資料庫的資料、也會出現在同一個 session 的其他頁面。
+	 * 所以維護頁面一律不使用 identity map。
+	 */
+	@Override
+	protected final boolean isIdentityMapEnabled() {
+		return false;
+	}
+	
+	// ======== 預先準備區 ======== //
+	/**
+	 * @return 選取某筆資料之後，是否在背景預先準備資料列表中的前後兩筆，預設為 false
+	 */
+	protected boolean isPrefetchAdjacent() {
+		return false;
+	}
+	
+	/**
+	 * 在背景 thread 上讀取 id 這筆資料在編輯區會用到、但資料列表沒有讀取的內容，例如 lazy 的 association。
+	 * 選取該筆資料時，結果會在 event thread 上交給 {@link #applyPrefetch(Entity, Object)}。
+	 * 不在 ZK 的 execution 中，不能操作 component 或 desktop，也不能碰資料列表中的 instance。
+	 * 預設回傳 null，也就是沒有東西要預先讀取。
+	 */
+	protected Object queryPrefetch(Object id) throws Exception {
+		return null;
+	}
+	
+	/**
+	 * 把 {@link #queryPrefetch(Object)} 的結果放進 data（資料列表中的 instance），
+	 * 例如設定給對應的 association，讓編輯區不用再 lazy load。在選取時、cloneEntity() 備份之前呼叫。
+	 * 預設不做任何事。
+	 */
+	protected void applyPrefetch(T data, Object prefetched) {}
+	
+	private void prefetchAdjacent(int index) {
+		if (index < 0) { return; }
+		
+		ArrayList<T> targets = new ArrayList<T>(2);
+		if (index + 1 < getListModel().size()) {
+			targets.add(getListModel().get(index + 1));
+		}
+		if (index > 0) {
+			targets.add(getListModel().get(index - 1));
+		}
+		
+		ArrayList<Object> ids = new ArrayList<Object>(2);
+		for (T data : targets) {
+			Object id = getEntityId(data);
+			if (id != null && !modifiedData.containsKey(data)) {
+				ids.add(id);
+			}
+		}
+		
+		//不再相鄰的就取消
+		getPrefetcher().retain(ids);
+		
+		//背景 thread 只拿 id 自行讀取，資料列表中的 data 仍然只在 event thread 上使用
+		for (final Object id : ids) {
+			getPrefetcher().submit(id, new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					return queryPrefetch(id);
+				}
+			});
+		}
+	}
+	
+	/**
+	 * 把 data 已經讀好的內容以 {@link #applyPrefetch(Entity, Object)} 放進 data。
+	 * 還沒讀好就不等了，由編輯區自己 lazy load。
+	 */
+	private void applyPrefetched(T data) {
+		if (prefetcher == null) { return; }
+		
+		Object id = getEntityId(data);
+		if (id == null || modifiedData.containsKey(data)) { return; }
+		
+		Object result = prefetcher.take(id, false);
+		if (result != null) {
+			applyPrefetch(data, result);
+		}
+	}
+	
+	private void cancelPrefetch(T data) {
+		if (prefetcher == null) { return; }
+		
+		if (data == null) {
+			prefetcher.cancelAll();
+			return;
+		}
+		
+		Object id = getEntityId(data);
+		if (id != null) {
+			prefetcher.cancel(id);
+		}
 	}
+	
+	private Prefetcher<Object, Object> getPrefetcher() {
+		if (prefetcher == null) {
+			prefetcher = new Prefetcher<Object, Object>(MAX_PREFETCH, false);
+		}
+		return prefetcher;
+	}
+	// ======== //
 		
 	/**
 	 * 資料列表元件選取後的客製邏輯。
@@ -139,14 +341,38 @@ public abstract class BaseMaintainViewModel<T extends Entity> extends BaseEntity
 	
 	/**
 	 * 因為 {@link BaseEntityViewModel#search()} 沒有處理 editFlag，
-	 * 所以這裡呼叫完 super 之後，會將 {@link #editFlag} 設定為 false 然後呼叫 {@link #refreshStatus()}。
+	 * 所以這裡搜尋完之後會呼叫 {@link #afterRefresh()}。
+	 * 搜尋被 {@link SearchBulkhead} 拒絕時不改變任何狀態。
 	 */
 	@Override
 	@Command
 	public void search() {
-		super.search();
+		if (!tryExecuteSearch()) { return; }
+		
+		afterRefresh();
+	}
+	
+	/**
+	 * 存檔、刪除成功之後重新搜尋。資料已經寫入，所以不經過 {@link SearchBulkhead}（參見 {@link #refreshSearch()}），
+	 * 不論搜尋結果如何都會 {@link #afterRefresh()}，避免編輯區與多筆編輯的異動狀態停留在寫入之前。
+	 */
+	private void refreshAfterWrite() {
+		refreshSearch();
+		afterRefresh();
+	}
+	
+	/**
+	 * 資料列表重新整理之後重設編輯狀態：{@link #editFlag} 設定為 false、清除多筆編輯的異動，
+	 * 然後呼叫 {@link #refreshStatus()}。child class override 時必須呼叫 super。
+	 */
+	protected void afterRefresh() {
 		editFlag = false;
+		modifiedData.clear();
+		modifiedOrder.clear();
+		modifyBackup = null;
+		cancelPrefetch(null);
 		refreshStatus();
+		refreshBatchStatus();
 	}
 	
 	@Command
@@ -155,11 +381,12 @@ public abstract class BaseMaintainViewModel<T extends Entity> extends BaseEntity
 		//避免因為還沒 onBlur 導致 fxStatus 沒更新導致按鈕還沒 disable 就按下去的哏
 		if (getEditorForm().isDirty()) { return; }
 		
-		getListModel().clearSelection();
+		restore();
+		clearSelection();
 		currentData = newEntity();
 		backupData = null;
 
-		status = Labels.getLabel("dtc.zk.ui.status.add");
+		status = I18nMessages.get("dtc.zk.ui.status.add");
 		newFlag = true;
 		editFlag = true;
 		deleteFlag = false;
@@ -178,18 +405,24 @@ public abstract class BaseMaintainViewModel<T extends Entity> extends BaseEntity
 	public void delete() {
 		//避免因為還沒 onBlur 導致 fxStatus 沒更新導致按鈕還沒 disable 就按下去的哏
 		if (getEditorForm().isDirty()) { return; }
-		MessageBoxUtil.confirm(Labels.getLabel("dtc.zk.confirm.delete"), deleteConfirm);
+		
+		restore();
+		MessageBoxUtil.confirm(I18nMessages.get("dtc.zk.confirm.delete"), deleteConfirm);
 	}
 	
 	private void processDelete() {
 		try {
+			validate(true);
 			doDelete();
+			EntityChangeBus.publish(entityClass, currentData, ChangeType.REMOVE);
+			updateTextIndex(currentData, ChangeType.REMOVE);
+			afterDelete(currentData);
 			currentData = null;
 			status = null;
 			newFlag = false;
 			deleteFlag = false;
-			//newFlag = false 跟 refreshStatus() 改成在 search() 裡頭作
-			search();
+			//newFlag = false 跟 refreshStatus() 改成在 afterRefresh() 裡頭作
+			refreshAfterWrite();
 		} catch (UIException e) {
 			MessageBoxUtil.info(e.getMessage());
 		} catch (Exception e) {
@@ -205,10 +438,158 @@ public abstract class BaseMaintainViewModel<T extends Entity> extends BaseEntity
 	 */
 	protected abstract void doDelete() throws Exception;
 	
+	/**
+	 * 刪除成功之後（包含 deleteSelected 中刪除成功的每一筆）讓 child class 可以自訂一些操作的 method。
+	 */
+	protected void afterDelete(T data) {}
+	
+	/**
+	 * 刪除前的驗證，有錯誤就加進 result，全部錯誤會一次顯示，而且不會呼叫 {@link #doDelete()}。
+	 * 預設不做任何檢查。
+	 */
+	protected void doValidateDelete(ValidationResult result) {}
+	
+	/**
+	 * deleteSelected 時對每一筆選取的資料作的刪除前驗證。
+	 * 預設會暫時把 {@link #currentData} 設為 data 再呼叫 {@link #doValidateDelete(ValidationResult)}，
+	 * 所以以 currentData 撰寫的驗證不用另外實作。
+	 */
+	protected void doValidateDelete(T data, ValidationResult result) {
+		T current = currentData;
+		currentData = data;
+		try {
+			doValidateDelete(result);
+		} finally {
+			currentData = current;
+		}
+	}
+	
+	@Command
+	public void deleteSelected() {
+		//避免因為還沒 onBlur 導致 fxStatus 沒更新導致按鈕還沒 disable 就按下去的哏
+		if (getEditorForm().isDirty()) { return; }
+		if (getListModel().getSelection().isEmpty()) { return; }
+		
+		pendingDelete = new ArrayList<T>(getListModel().getSelection());
+		MessageBoxUtil.confirm(
+			I18nMessages.get("dtc.zk.confirm.deleteSelected", new Object[]{pendingDelete.size()}),
+			deleteSelectedConfirm
+		);
+	}
+	
+	private void processDeleteSelected() {
+		List<T> dataList = pendingDelete;
+		pendingDelete = null;
+		
+		//跟 processDelete() 一樣先作驗證，沒通過的不交給 doDeleteAll()
+		LinkedHashMap<T, Exception> invalid = new LinkedHashMap<T, Exception>();
+		ArrayList<T> validList = new ArrayList<T>();
+		for (T data : dataList) {
+			ValidationResult result = new ValidationResult();
+			doValidateDelete(data, result);
+			if (result.hasErrors()) {
+				invalid.put(data, new ValidationException(result));
+			} else {
+				validList.add(data);
+			}
+		}
+		
+		if (!invalid.isEmpty() && (isDeleteAllAtomic() || validList.isEmpty())) {
+			MessageBoxUtil.info(formatDeleteFailures(invalid));
+			return;
+		}
+		
+		try {
+			Map<T, Exception> failures = doDeleteAll(validList);
+			
+			if (isDeleteAllAtomic() && !failures.isEmpty()) {
+				//整批應該已經 rollback，資料列表維持原狀
+				MessageBoxUtil.info(formatDeleteFailures(failures));
+				return;
+			}
+			
+			ArrayList<T> deleted = new ArrayList<T>(validList);
+			deleted.removeAll(failures.keySet());
+			getListModel().removeAll(deleted);
+			for (T data : deleted) {
+				EntityChangeBus.publish(entityClass, data, ChangeType.REMOVE);
+				updateTextIndex(data, ChangeType.REMOVE);
+				afterDelete(data);
+			}
+			
+			if (currentData != null && deleted.contains(currentData)) {
+				currentData = null;
+				status = null;
+				newFlag = false;
+				editFlag = false;
+				deleteFlag = false;
+				refreshStatus();
+				notifyChange("currentData");
+			}
+			
+			if (!failures.isEmpty() || !invalid.isEmpty()) {
+				LinkedHashMap<T, Exception> all = new LinkedHashMap<T, Exception>(invalid);
+				all.putAll(failures);
+				MessageBoxUtil.info(formatDeleteFailures(all));
+			}
+		} catch (UIException e) {
+			MessageBoxUtil.info(e.getMessage());
+		} catch (Exception e) {
+			MessageBoxUtil.error(e.getMessage());
+			e.printStackTrace();
+		}
+	}
+	
+	private String formatDeleteFailures(Map<T, Exception> failures) {
+		StringBuffer message = new StringBuffer(
+			I18nMessages.get("dtc.zk.error.delete.partial", new Object[]{failures.size()})
+		);
+		
+		for (Map.Entry<T, Exception> entry : failures.entrySet()) {
+			message.append("\n" + getDataLabel(entry.getKey()) + "：" + entry.getValue().getMessage());
+		}
+		
+		return message.toString();
+	}
+	
+	/**
+	 * 多筆刪除的客製邏輯，一次刪除 dataList 中所有資料。
+	 * <p>
+	 * 如果 {@link #isDeleteAllAtomic()} 為 false，個別資料刪除失敗（例如 {@link com.dtc.common.zk.exception.DeleteFailedByReference}）
+	 * 時不應該 rollback 其他資料，而是放進回傳的 map；
+	 * 為 true 時則應該整批 rollback，直接丟出 exception
+	 * （如果仍然回傳了刪除失敗的資料，會視為整批失敗，資料列表不會移除任何資料）。
+	 * <p>
+	 * dataList 只包含通過 {@link #doValidateDelete(Entity, ValidationResult)} 的資料，
+	 * 如果 {@link #isDeleteAllAtomic()} 為 true，只要有一筆驗證沒通過就不會呼叫這個 method。
+	 * 
+	 * @return 刪除失敗的資料與原因，全部成功則回傳空的 map
+	 * @throws Exception
+	 */
+	protected Map<T, Exception> doDeleteAll(Collection<T> dataList) throws Exception {
+		throw new UnsupportedOperationException("預設無此行為，請自行實作");
+	}
+	
+	/**
+	 * @return 多筆刪除時，只要有一筆失敗就整批 rollback。預設為 false
+	 * @see #doDeleteAll(Collection)
+	 */
+	protected boolean isDeleteAllAtomic() {
+		return false;
+	}
+	
+	/**
+	 * @return 多筆刪除失敗時，用來表示該筆資料的文字，預設為 toString()
+	 */
+	protected String getDataLabel(T data) {
+		return data.toString();
+	}
+	
 	@Command
 	public void cancel() {
+		restore();
 		if (getEditorForm().isDirty()) {
-			MessageBoxUtil.confirm(Labels.getLabel("dtc.zk.confirm.editorDirty"), cancelConfirm);
+			MessageBoxUtil.confirm(I18nMessages.get("dtc.zk.confirm.editorDirty"), cancelConfirm);
 			return;
 		}
 		processCancel();
@@ -235,22 +616,38 @@ public abstract class BaseMaintainViewModel<T extends Entity> extends BaseEntity
 	@Command
 	@NotifyChange("currentData")
 	public void save() {
+		restore();
+		//form binding 的 save 已經作完 resetDirty()，所以要拿 last
+		dirtyFields = getEditorForm().isDirty() ?
+			getEditorForm().getDirtyFields() : getEditorForm().getLastDirtyFields();
+		
 		try {
-			doSave();
+			validate(false);
+			
+			if (canPartialUpdate()) {
+				partialUpdate();
+			} else {
+				doSave();
+			}
 						
 			//doSave() 可以炸 exception 來表示新增 / 儲存的時候遇到的狀況
 			//所以下面這些東西必須在 doSave()（成功）之後才能作
+			EntityChangeBus.publish(entityClass, currentData, ChangeType.UPSERT);
+			updateTextIndex(currentData, ChangeType.UPSERT);
+			afterSave(currentData);
 			currentData = null;
 			status = null;
 			newFlag = false;
 			deleteFlag = false;
-			//newFlag = false 跟 refreshStatus() 改成在 search() 裡頭作
-			search();
+			//newFlag = false 跟 refreshStatus() 改成在 afterRefresh() 裡頭作
+			refreshAfterWrite();
 		} catch (UIException e) {
 			MessageBoxUtil.info(e.getMessage());
 		} catch (Exception e) {
 			MessageBoxUtil.error(e.getMessage());
 			e.printStackTrace();
+		} finally {
+			dirtyFields = Collections.emptyMap();
 		}
 	}
 	
@@ -258,8 +655,249 @@ public abstract class BaseMaintainViewModel<T extends Entity> extends BaseEntity
 	 * 按下「存檔」按鈕後的客製邏輯。
 	 * 如果有已知的例外狀況，直接丟出 {@link UIException} 即可。
 	 * @throws Exception
+	 * @see #getDirtyFields()
 	 */
 	protected abstract void doSave() throws Exception;
+	
+	/**
+	 * 存檔成功之後（包含 saveAll 中的每一筆）、重新 {@link #search()} 之前讓 child class 可以自訂一些操作的 method。
+	 */
+	protected void afterSave(T data) {}
+	
+	/**
+	 * 存檔前的驗證，有錯誤就加進 result，全部錯誤會一次顯示，而且不會呼叫 {@link #doSave()}。
+	 * 預設不做任何檢查。
+	 */
+	protected void doValidate(ValidationResult result) {}
+	
+	private void validate(boolean delete) throws ValidationException {
+		ValidationResult result = new ValidationResult();
+		
+		if (delete) {
+			doValidateDelete(result);
+		} else {
+			doValidate(result);
+		}
+		
+		if (result.hasErrors()) {
+			throw new ValidationException(result);
+		}
+	}
+	
+	/**
+	 * @return 是否只更新有異動的 field，預設為 false
+	 */
+	protected boolean isPartialUpdate() {
+		return false;
+	}
+	
+	/**
+	 * 執行 partial update 的 HQL，基本上就是 DAO 的 executeUpdate。
+	 * @return 更新的筆數
+	 */
+	protected int executeUpdate(String hql, Map<String, Object> params) throws Exception {
+		throw new UnsupportedOperationException("預設無此行為，請自行實作");
+	}
+	
+	/**
+	 * 新增資料、沒有異動、或是異動的 field 是 nested attribute（例如 <code>foo.bar</code>）時，
+	 * 仍然交給 {@link #doSave()}。
+	 */
+	private boolean canPartialUpdate() {
+		if (!isPartialUpdate() || newFlag || dirtyFields.isEmpty()) { return false; }
+		
+		for (String field : dirtyFields.keySet()) {
+			if (field.indexOf('.') != -1) { return false; }
+		}
+		
+		return true;
+	}
+	
+	private void partialUpdate() throws Exception {
+		StringBuffer hql = new StringBuffer("update " + entityClass.getSimpleName() + " set ");
+		HashMap<String, Object> params = new HashMap<String, Object>();
+		String versionName = getVersionName();
+		
+		boolean first = true;
+		for (DirtyField field : dirtyFields.values()) {
+			if (!first) { hql.append(", "); }
+			first = false;
+			
+			String paramName = "dirty_" + field.getName();
+			hql.append(field.getName() + " = :" + paramName);
+			params.put(paramName, field.getNewValue());
+		}
+		
+		if (versionName != null) {
+			hql.append(", " + versionName + " = " + versionName + " + 1");
+		}
+		
+		hql.append(" where " + getIdName() + " = :id");
+		params.put("id", getEntityId(currentData));
+		
+		if (versionName != null) {
+			hql.append(" and " + versionName + " = :version");
+			params.put("version", getProperty(currentData, versionName));
+		}
+		
+		if (executeUpdate(hql.toString(), params) == 0) {
+			throw new UpdateFailedByVersion();
+		}
+	}
+
+	// ======== 多筆編輯區 ======== //
+	@Command
+	public void beginModify(@BindingParam("data") T data) {
+		backupForModify(data);
+	}
+	
+	@Command
+	public void modifyData(@BindingParam("data") T data) {
+		markModified(data);
+	}
+	
+	/**
+	 * 在 data 被修改之前以 cloneEntity() 備份，作為之後 {@link #markModified(Entity)} 的備份。
+	 * 已經標記異動或已經備份過的資料不會重複備份。
+	 */
+	protected void backupForModify(T data) {
+		if (data == null || modifiedData.containsKey(data)) { return; }
+		
+		if (modifyBackup == null) {
+			modifyBackup = new IdentityHashMap<T, T>();
+		}
+		if (!modifyBackup.containsKey(data)) {
+			modifyBackup.put(data, data.<T>cloneEntity());
+		}
+	}
+	
+	/**
+	 * 標記 data 有異動。第一次標記時以 {@link #backupForModify(Entity)} 的備份作為 cancelAll 還原的依據，
+	 * 沒有備份過的話則以當下的 cloneEntity() 備份。
+	 */
+	protected void markModified(T data) {
+		if (data == null || modifiedData.containsKey(data)) { return; }
+		
+		T backup = modifyBackup == null ? null : modifyBackup.remove(data);
+		cancelPrefetch(data);	//異動中的資料不再套用背景讀取的內容，避免蓋掉修改
+		modifiedData.put(data, backup != null ? backup : data.<T>cloneEntity());
+		modifiedOrder.add(data);
+		refreshBatchStatus();
+	}
+	
+	public boolean isModified(T data) {
+		return modifiedData.containsKey(data);
+	}
+	
+	@Command
+	public void saveAll() {
+		if (modifiedData.isEmpty()) { return; }
+		
+		restore();
+		try {
+			doSaveAll(new ArrayList<T>(modifiedOrder));
+			for (T data : modifiedOrder) {
+				EntityChangeBus.publish(entityClass, data, ChangeType.UPSERT);
+				updateTextIndex(data, ChangeType.UPSERT);
+				afterSave(data);
+			}
+			
+			//跟 save() 一樣，doSaveAll() 成功之後才能作
+			currentData = null;
+			status = null;
+			newFlag = false;
+			deleteFlag = false;
+			refreshAfterWrite();	//會順便清空 modifiedData
+			notifyChange("currentData");
+		} catch (UIException e) {
+			MessageBoxUtil.info(e.getMessage());
+		} catch (Exception e) {
+			MessageBoxUtil.error(e.getMessage());
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * 按下「全部存檔」按鈕後的客製邏輯，dataList 為所有有異動的資料。
+	 * 建議在同一個 transaction 內完成，並搭配 JDBC batch（例如 hibernate.jdbc.batch_size）。
+	 * 如果有已知的例外狀況，直接丟出 {@link UIException} 即可，此時所有資料都會保持異動狀態。
+	 * @throws Exception
+	 */
+	protected void doSaveAll(Collection<T> dataList) throws Exception {
+		throw new UnsupportedOperationException("預設無此行為，請自行實作");
+	}
+	
+	@Command
+	public void cancelAll() {
+		restore();
+		if (!loadModifiedBackup()) { return; }
+		
+		for (T data : modifiedOrder) {
+			T backup = modifiedData.get(data);
+			if (backup == null) { continue; }	//資料庫中已經沒有這筆資料
+			
+			for (int i = 0; i < getListModel().size(); i++) {
+				if (getListModel().get(i) == data) {
+					getListModel().set(i, backup);
+					break;
+				}
+			}
+			if (currentData == data) {
+				currentData = backup;
+				notifyChange("currentData");
+			}
+		}
+		
+		modifiedData.clear();
+		modifiedOrder.clear();
+		modifyBackup = null;
+		refreshBatchStatus();
+	}
+	
+	/**
+	 * 反序列化之後 {@link #modifiedData} 沒有備份，以 {@link #loadData(List)} 一次讀回。
+	 * @return 是否成功，失敗時已經顯示錯誤訊息
+	 */
+	private boolean loadModifiedBackup() {
+		ArrayList<Object> ids = new ArrayList<Object>();
+		for (T data : modifiedOrder) {
+			if (modifiedData.get(data) == null) {
+				ids.add(getEntityId(data));
+			}
+		}
+		if (ids.isEmpty()) { return true; }
+		
+		List<T> backups;
+		try {
+			backups = loadData(ids);
+		} catch (Exception e) {
+			handleDaoException(e);
+			return false;
+		}
+		
+		for (T backup : backups) {
+			T data = findById(modifiedOrder, getEntityId(backup));
+			if (data != null) {
+				modifiedData.put(data, backup);
+			}
+		}
+		return true;
+	}
+	
+	private T findById(List<T> dataList, Object id) {
+		for (T data : dataList) {
+			if (id.equals(getEntityId(data))) { return data; }
+		}
+		return null;
+	}
+	
+	private static final String[] BATCH_STATUS_FIELD = {
+		"modifiedCount", "disableSaveAll", "disableCancelAll"
+	};
+	private void refreshBatchStatus() {
+		notifyChange(BATCH_STATUS_FIELD);
+	}
+	// ======== 多筆編輯區結束 ======== //
 
 	//注意：不能包含 currentData，否則 triggerStatus 會造成無窮迴圈
 	//所以currentData要由save,cancel,delete,add,selectData行為時自己去控制notifyChange
@@ -289,11 +927,56 @@ public abstract class BaseMaintainViewModel<T extends Entity> extends BaseEntity
 	 */
 	protected void setEditorFormField(String name, Object value) {
 		getEditorForm().setField(name, value);
-		BindUtils.postNotifyChange(null, null, editorForm, name);
-		BindUtils.postNotifyChange(null, null, editorForm.getStatus(), "dirty");
+		notifyChange(editorForm, name);
+		notifyChange(editorForm.getStatus(), "dirty");
 	}
 
+	// ======== 序列化區 ======== //
+	/**
+	 * 資料列表重新讀取之後，把有異動的資料（序列化時有完整保留）換回資料列表與 {@link #currentData}，
+	 * 並以還原的 {@link #currentData} 重新建立 {@link #backupData}。
+	 */
+	@Override
+	protected void afterRestore() {
+		super.afterRestore();
+		
+		for (int i = 0; i < getListModel().size(); i++) {
+			T data = findById(modifiedOrder, getEntityId(getListModel().get(i)));
+			if (data != null) {
+				getListModel().set(i, data);
+			}
+		}
+		
+		if (currentData == null || getEntityId(currentData) == null) { return; }
+		
+		T modified = findById(modifiedOrder, getEntityId(currentData));
+		if (modified != null) {
+			currentData = modified;
+		}
+		//跟 processSelect() 一樣是 currentData 當下的值
+		backupData = currentData.<T>cloneEntity();
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		
+		modifiedData = new IdentityHashMap<T, T>();
+		for (T data : modifiedOrder) {
+			modifiedData.put(data, null);
+		}
+	}
+	// ======== //
+	
 	//==== setter / getter 區 ====//
+	/**
+	 * 只有在 {@link #doSave()} 當中有意義。
+	 * 
+	 * @return 編輯區這次存檔有異動的 field，key 值為 field 名稱
+	 */
+	protected Map<String, DirtyField> getDirtyFields() {
+		return dirtyFields;
+	}
+	
 	public boolean isNewFlag() {
 		return newFlag;
 	}
@@ -329,4 +1012,16 @@ public abstract class BaseMaintainViewModel<T extends Entity> extends BaseEntity
 	public boolean isDisableDelete() {
 		return getEditorForm().isDirty() || !deleteFlag;
 	}
+	
+	public int getModifiedCount() {
+		return modifiedData.size();
+	}
+	
+	public boolean isDisableSaveAll() {
+		return modifiedData.isEmpty();
+	}
+	
+	public boolean isDisableCancelAll() {
+		return modifiedData.isEmpty();
+	}
 }
\ No newline at end of file
@@ -0,0 +1,233 @@
+package com.dtc.common.zk.viewmodel;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.zkoss.bind.annotation.Command;
+import org.zkoss.bind.annotation.Init;
+import org.zkoss.bind.annotation.NotifyChange;
+import org.zkoss.zul.ListModelList;
+
+import com.dtc.boundary.Entity;
+import com.dtc.common.zk.util.WorkerPool;
+
+/**
+ * 「master-detail」頁面的基礎 ViewModel，以 {@link BaseMaintainViewModel} 為基礎，
+ * 在選取 master 資料時以 {@link #queryDetail(Entity)} 載入 detail 並放進 {@link #getDetailModel()}。
+ * <p>
+ * 提供下列功能：
+ * <ul>
+ * 	<li>最近看過的 detail 會保留在 LRU cache 中，數量由 {@link #getDetailCacheSize()} 決定</li>
+ * 	<li>
+ * 		如果 {@link #isPrefetchNext()} 回傳 true，選取某筆資料之後會在 {@link WorkerPool} 上
+ * 		預先載入資料列表中下一筆的 detail，參見 {@link Prefetcher}
+ * 	</li>
+ * 	<li>master 存檔、刪除之後會清除該筆的 detail cache，也可以用 {@link #invalidateDetail(Entity)} 自行清除</li>
+ * </ul>
+ * projection 模式下不會作預先載入。
+ * <p>
+ * ZUL 中 detail 的資料列表元件以 <code>@load(vm.detailModel)</code> 作為 model。
+ * <p>
+ * <b>注意：</b>child class 必須要有掛 <code>@Init(superclass=true)</code> 的 method。
+ * 
+ * @param <T> master entity
+ * @param <D> detail
+ */
+public abstract class BaseMasterDetailViewModel<T extends Entity, D> extends BaseMaintainViewModel<T> {
+	private static final long serialVersionUID = 1L;
+	private static final int DEFAULT_DETAIL_CACHE_SIZE = 20;
+	private static final int MAX_PREFETCH = 4;
+	
+	//已經存檔的 master 序列化時不保留，還原之後重新 queryDetail()，參見 writeObject()
+	private transient ListModelList<D> detailStore = new ListModelList<D>();
+	
+	//key 為 master 的 id，access order 的 LinkedHashMap 就是 LRU。序列化時不保留
+	//背景載入的結果只會在 event thread 上透過 detailPrefetcher 取回再放進來，
+	//invalidate 時一併取消，所以 save 之前讀到的 detail 不會蓋回去
+	private transient LinkedHashMap<Object, List<D>> detailCache = newDetailCache();
+	
+	//key 為 master 的 id
+	private transient Prefetcher<Object, List<D>> detailPrefetcher = new Prefetcher<Object, List<D>>(MAX_PREFETCH, false);
+	
+	@Init(superclass=true)
+	public void baseMasterDetailInit() {}
+	
+	/**
+	 * @return master 對應的 detail。
+	 * 	如果有開啟 {@link #isPrefetchNext()}，會在背景 thread 上以 master 的 cloneEntity() 呼叫，不能操作 component 或 desktop。
+	 */
+	protected abstract List<D> queryDetail(T master) throws Exception;
+	
+	/**
+	 * @return LRU cache 最多保留幾筆 master 的 detail，預設為 20
+	 */
+	protected int getDetailCacheSize() {
+		return DEFAULT_DETAIL_CACHE_SIZE;
+	}
+	
+	/**
+	 * @return 選取某筆資料之後，是否在背景預先載入下一筆的 detail，預設為 false
+	 */
+	protected boolean isPrefetchNext() {
+		return false;
+	}
+	
+	/**
+	 * 載入 {@link #currentData} 的 detail。
+	 * child class override 時必須呼叫 super。
+	 */
+	@Override
+	protected void doSelectData() {
+		detailStore.clear();
+		if (currentData == null) { return; }
+		
+		try {
+			detailStore.addAll(getDetail(currentData));
+		} catch (Exception e) {
+			handleDaoException(e);
+			return;
+		}
+		
+		if (isPrefetchNext() && getProjectionColumns() == null) {
+			prefetch(getListModel().indexOf(currentData) + 1);
+		}
+	}
+	
+	@Override
+	@Command
+	@NotifyChange("currentData")
+	public void add() {
+		super.add();
+		detailStore.clear();
+	}
+	
+	@Override
+	protected void afterRefresh() {
+		super.afterRefresh();
+		if (currentData == null) {
+			detailStore.clear();
+		}
+	}
+	
+	@Override
+	protected void afterSave(T data) {
+		invalidateDetail(data);
+	}
+	
+	@Override
+	protected void afterDelete(T data) {
+		invalidateDetail(data);
+	}
+	
+	/**
+	 * 清除 master 的 detail cache，下次選取時會重新 {@link #queryDetail(Entity)}。
+	 */
+	protected void invalidateDetail(T master) {
+		Object id = getEntityId(master);
+		if (id == null) { return; }
+		
+		detailPrefetcher.cancel(id);
+		detailCache.remove(id);
+	}
+	
+	/**
+	 * 清除所有 detail cache。
+	 */
+	protected void invalidateAllDetail() {
+		detailPrefetcher.cancelAll();
+		detailCache.clear();
+	}
+	
+	private List<D> getDetail(T master) throws Exception {
+		Object id = getEntityId(master);
+		if (id == null) {	//還沒存檔的資料
+			return queryDetail(master);
+		}
+		
+		List<D> result = detailCache.get(id);
+		if (result != null) { return result; }
+		
+		result = detailPrefetcher.take(id, true);
+		if (result == null) {	//沒有預先載入或是背景載入失敗，就在這裡查詢
+			result = new ArrayList<D>(queryDetail(master));
+		}
+		detailCache.put(id, result);
+		return result;
+	}
+	
+	private void prefetch(int index) {
+		if (index <= 0 || index >= getListModel().size()) { return; }
+		
+		T data = getListModel().get(index);
+		Object id = getEntityId(data);
+		if (id == null || detailCache.containsKey(id) || detailPrefetcher.contains(id)) { return; }
+		
+		//背景 thread 不碰資料列表中的 instance，在這裡先複製一份
+		final T master = data.<T>cloneEntity();
+		detailPrefetcher.submit(id, new Callable<List<D>>() {
+			@Override
+			public List<D> call() throws Exception {
+				return new ArrayList<D>(queryDetail(master));
+			}
+		});
+	}
+	
+	private LinkedHashMap<Object, List<D>> newDetailCache() {
+		return new LinkedHashMap<Object, List<D>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Object, List<D>> eldest) {
+				return size() > getDetailCacheSize();
+			}
+		};
+	}
+	
+	/**
+	 * 還原 {@link #currentData} 之後重新載入它的 detail。
+	 * 在 getter 中執行，失敗時只會記錄錯誤，detail 維持空的。
+	 */
+	@Override
+	protected void afterRestore() {
+		super.afterRestore();
+		if (currentData == null || getEntityId(currentData) == null) { return; }
+		
+		try {
+			detailStore.addAll(getDetail(currentData));
+		} catch (Exception e) {
+			handleDaoException(e);
+		}
+	}
+	
+	/**
+	 * 已經存檔的 master 可以重新 {@link #queryDetail(Entity)}，所以只有還沒存檔的 master 才寫出 detail。
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		boolean reload = currentData != null && getEntityId(currentData) != null;
+		out.writeObject(reload ? null : new ArrayList<D>(detailStore));
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		detailStore = new ListModelList<D>();
+		List<D> detail = (List<D>)in.readObject();
+		if (detail != null) {
+			detailStore.addAll(detail);
+		}
+		detailCache = newDetailCache();
+		detailPrefetcher = new Prefetcher<Object, List<D>>(MAX_PREFETCH, false);
+	}
+	
+	public final ListModelList<D> getDetailModel() {
+		restore();
+		return detailStore;
+	}
+}
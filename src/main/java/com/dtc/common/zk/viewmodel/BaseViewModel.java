@@ -1,5 +1,6 @@
 package com.dtc.common.zk.viewmodel;
 
+import java.io.Serializable;
 import java.util.Map;
 
 import org.zkoss.bind.BindUtils;
@@ -7,12 +8,14 @@ import org.zkoss.bind.Binder;
 import org.zkoss.bind.annotation.ContextParam;
 import org.zkoss.bind.annotation.ContextType;
 import org.zkoss.bind.annotation.Init;
-import org.zkoss.util.resource.Labels;
 import org.zkoss.zk.ui.Executions;
+import org.zkoss.zk.ui.metainfo.PageDefinition;
 import org.zkoss.zul.Window;
 
 import com.dtc.common.zk.util.I18nLocator;
+import com.dtc.common.zk.util.I18nMessages;
 import com.dtc.common.zk.util.MessageBoxUtil;
+import com.dtc.common.zk.util.PageDefinitionCache;
 
 /**
  * <ul>
@@ -24,9 +27,30 @@ import com.dtc.common.zk.util.MessageBoxUtil;
  * </ul>
  * @author MontyPan
  */
-public class BaseViewModel {
+public class BaseViewModel implements Serializable {
+	private static final long serialVersionUID = 1L;
+	
 	static { I18nLocator.register(); }
 	
+	private static final BindingDispatcher DEFAULT_DISPATCHER = new BindingDispatcher() {
+		@Override
+		public void postNotifyChange(Object bean, String property) {
+			BindUtils.postNotifyChange(null, null, bean, property);
+		}
+		
+		@Override
+		public void postCommand(Binder binder, String command, Map<String, Object> params) {
+			binder.postCommand(command, params);
+		}
+		
+		@Override
+		public void postGlobalCommand(String command, Map<String, Object> params) {
+			BindUtils.postGlobalCommand(null, null, command, params);
+		}
+	};
+	
+	private static volatile BindingDispatcher dispatcher = DEFAULT_DISPATCHER;
+	
 	private Binder binder;
 	
 	protected BaseViewModel() {}
@@ -42,7 +66,7 @@ public class BaseViewModel {
 	 */
 	protected void notifyChange(String[] properties) {
 		for (String property : properties) {
-			BindUtils.postNotifyChange(null, null, this, property);
+			notifyChange(this, property);
 		}
 	}
 	
@@ -51,7 +75,17 @@ public class BaseViewModel {
 	 * 基本上就是 {@link BindUtils#postNotifyChange(String, String, Object, String)} 的 wrapper。
 	 */
 	protected void notifyChange(String property) {
-		BindUtils.postNotifyChange(null, null, this, property);
+		notifyChange(this, property);
+	}
+	
+	/**
+	 * 對 view model 以外的 bean（例如 form 的 middle object）以程式的方式觸發 NotifyChange。
+	 */
+	protected void notifyChange(Object bean, String property) {
+		if (BindingProfiler.isActive()) {
+			BindingProfiler.record(this, bean == this ? property : bean.getClass().getSimpleName() + "." + property);
+		}
+		dispatcher.postNotifyChange(bean, property);
 	}
 	
 	/**
@@ -67,7 +101,10 @@ public class BaseViewModel {
 	 * 基本上就是 {@link Binder#postCommand(String, Map)} 的 wrapper。
 	 */
 	protected void postCommand(String command, Map<String, Object> params) {
-		binder.postCommand(command, params);
+		if (BindingProfiler.isActive()) {
+			BindingProfiler.record(this, "command:" + command);
+		}
+		dispatcher.postCommand(binder, command, params);
 	}
 	
 	/**
@@ -83,11 +120,14 @@ public class BaseViewModel {
 	 * 基本上就是 {@link BindUtils#postGlobalCommand(String, String, String, Map)} 的 wrapper。
 	 */
 	protected void postGlobalCommand(String command, Map<String, Object> params) {
-		BindUtils.postGlobalCommand(null, null, command, params);
+		if (BindingProfiler.isActive()) {
+			BindingProfiler.record(this, "globalCommand:" + command);
+		}
+		dispatcher.postGlobalCommand(command, params);
 	}
 	
 	protected void handleDaoException(Exception e) {
-		MessageBoxUtil.error(Labels.getLabel("dtc.zk.error.dao.exception") + "\n" + e.getLocalizedMessage());
+		MessageBoxUtil.error(I18nMessages.get("dtc.zk.error.dao.exception") + "\n" + e.getLocalizedMessage());
 		e.printStackTrace();
 	}
 	
@@ -95,11 +135,22 @@ public class BaseViewModel {
 		openDialog(uri, null);
 	}
 	
+	/**
+	 * 以 {@link PageDefinitionCache} 中的 {@link PageDefinition} 建立 dialog，不用每次重新解析 ZUL。
+	 */
 	protected void openDialog(String uri, Map<String, Object> params) {
-		Window window = (Window)Executions.createComponents(uri, null, params);
+		PageDefinition definition = PageDefinitionCache.get(uri);
+		Window window = (Window)Executions.createComponents(definition, null, params);
 		window.doModal();
 	}
 
+	/**
+	 * 替換所有 view model 發出 notify change / command 的方式，給 null 則恢復預設值。
+	 */
+	public static void setBindingDispatcher(BindingDispatcher dispatcher) {
+		BaseViewModel.dispatcher = dispatcher == null ? DEFAULT_DISPATCHER : dispatcher;
+	}
+	
 	// ==== 以下為 getter / setter 區 ==== //
 	protected Binder getBinder() {
 		return binder;
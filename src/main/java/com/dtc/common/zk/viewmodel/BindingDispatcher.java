@@ -0,0 +1,20 @@
+package com.dtc.common.zk.viewmodel;
+
+import java.util.Map;
+
+import org.zkoss.bind.Binder;
+
+/**
+ * {@link BaseViewModel} 發出 notify change / command 的實際執行者，
+ * 預設直接交給 ZK（{@link org.zkoss.bind.BindUtils} 與 {@link Binder}）。
+ * <p>
+ * 沒有 servlet container 的環境（例如壓力測試）可以用 {@link BaseViewModel#setBindingDispatcher(BindingDispatcher)}
+ * 換成自己的實作，記錄或忽略這些通知。
+ */
+public interface BindingDispatcher {
+	void postNotifyChange(Object bean, String property);
+	
+	void postCommand(Binder binder, String command, Map<String, Object> params);
+	
+	void postGlobalCommand(String command, Map<String, Object> params);
+}
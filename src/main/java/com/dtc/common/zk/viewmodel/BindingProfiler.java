@@ -0,0 +1,260 @@
+package com.dtc.common.zk.viewmodel;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.zkoss.bind.BindContext;
+import org.zkoss.bind.Phase;
+import org.zkoss.bind.PhaseListener;
+import org.zkoss.lang.Classes;
+import org.zkoss.lang.Library;
+import org.zkoss.zk.ui.WebApp;
+import org.zkoss.zk.ui.util.WebAppCleanup;
+import org.zkoss.zk.ui.util.WebAppInit;
+
+/**
+ * 統計每個 view model 的每個 command 發出多少 notify change（包含 command 與 global command），
+ * 用來找出 binder 負擔最重的頁面。
+ * <p>
+ * 使用方式（zk.xml）：
+ * <pre>
+ * &lt;library-property&gt;
+ * 	&lt;name&gt;org.zkoss.bind.PhaseListener.class&lt;/name&gt;
+ * 	&lt;value&gt;com.dtc.common.zk.viewmodel.BindingProfiler&lt;/value&gt;
+ * &lt;/library-property&gt;
+ * &lt;library-property&gt;
+ * 	&lt;name&gt;com.dtc.common.zk.bindingProfiler.enabled&lt;/name&gt;
+ * 	&lt;value&gt;true&lt;/value&gt;
+ * &lt;/library-property&gt;
+ * &lt;listener&gt;
+ * 	&lt;listener-class&gt;com.dtc.common.zk.viewmodel.BindingProfiler&lt;/listener-class&gt;
+ * &lt;/listener&gt;
+ * </pre>
+ * <code>org.zkoss.bind.PhaseListener.class</code> 只能設定一個 class，
+ * 如果 application 原本就有自己的 PhaseListener，必須改設定在 {@value #DELEGATE}，
+ * 由 BindingProfiler 在每個 phase 轉呼叫（不論是否啟用統計）：
+ * <pre>
+ * &lt;library-property&gt;
+ * 	&lt;name&gt;com.dtc.common.zk.bindingProfiler.delegate&lt;/name&gt;
+ * 	&lt;value&gt;foo.bar.MyPhaseListener&lt;/value&gt;
+ * &lt;/library-property&gt;
+ * </pre>
+ * 有啟用時，listener 會在 application 啟動時註冊 JMX MBean（<code>{@value #OBJECT_NAME}</code>），
+ * 結束時取消註冊，避免 redeploy 之後舊的 classloader 無法回收。
+ * 結果可以透過 MBean 的 {@link #getReport()} 查看，也可以在執行期間開關。
+ * 只會統計 {@link BaseViewModel} 以程式發出的通知。
+ */
+public class BindingProfiler implements PhaseListener, BindingProfilerMBean, WebAppInit, WebAppCleanup {
+	public static final String ENABLED = "com.dtc.common.zk.bindingProfiler.enabled";
+	public static final String OBJECT_NAME = "com.dtc.common.zk:type=BindingProfiler";
+	public static final String DELEGATE = "com.dtc.common.zk.bindingProfiler.delegate";
+	
+	private static final String NO_COMMAND = "-";
+	private static final int REPORT_SIZE = 20;
+	
+	private static volatile boolean enabled = "true".equals(Library.getProperty(ENABLED));
+	private static final ConcurrentHashMap<String, ConcurrentHashMap<String, CommandStats>> STATS = 
+		new ConcurrentHashMap<String, ConcurrentHashMap<String, CommandStats>>();
+	private static final ThreadLocal<String> CURRENT_COMMAND = new ThreadLocal<String>();
+	private static final Logger logger = Logger.getLogger(BindingProfiler.class.getName());
+	
+	public BindingProfiler() {}
+	
+	// ======== WebAppInit / WebAppCleanup ======== //
+	@Override
+	public void init(WebApp webApp) {
+		if (enabled) {
+			registerMBean();
+		}
+	}
+	
+	@Override
+	public void cleanup(WebApp webApp) {
+		unregisterMBean();
+		STATS.clear();
+	}
+	
+	/**
+	 * 註冊 JMX MBean，已經註冊過則不作任何事。
+	 */
+	public static synchronized void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(new BindingProfiler(), name);
+			}
+		} catch (Exception e) {
+			logger.log(Level.WARNING, "無法註冊 " + OBJECT_NAME, e);
+		}
+	}
+	
+	public static synchronized void unregisterMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (Exception e) {
+			logger.log(Level.WARNING, "無法取消註冊 " + OBJECT_NAME, e);
+		}
+	}
+	
+	// ======== PhaseListener ======== //
+	@Override
+	public void prePhase(Phase phase, BindContext ctx) {
+		if (Delegate.INSTANCE != null) {
+			Delegate.INSTANCE.prePhase(phase, ctx);
+		}
+		
+		if (!enabled || phase != Phase.COMMAND) { return; }
+		
+		CURRENT_COMMAND.set(ctx.getCommandName());
+		Object viewModel = ctx.getBinder().getViewModel();
+		if (viewModel != null) {
+			getStats(viewModel.getClass().getName(), ctx.getCommandName()).invocations.incrementAndGet();
+		}
+	}
+	
+	@Override
+	public void postPhase(Phase phase, BindContext ctx) {
+		if (phase == Phase.COMMAND) {
+			CURRENT_COMMAND.remove();
+		}
+		
+		if (Delegate.INSTANCE != null) {
+			Delegate.INSTANCE.postPhase(phase, ctx);
+		}
+	}
+	
+	/**
+	 * {@value #DELEGATE} 指定的 PhaseListener，第一次使用時才建立，所有 BindingProfiler 共用。
+	 */
+	private static class Delegate {
+		private static final PhaseListener INSTANCE = load();
+		
+		private static PhaseListener load() {
+			String className = Library.getProperty(DELEGATE);
+			if (className == null) { return null; }
+			
+			try {
+				return (PhaseListener)Classes.newInstanceByThread(className);
+			} catch (Exception e) {
+				logger.log(Level.SEVERE, "無法建立 " + DELEGATE + "：" + className, e);
+				return null;
+			}
+		}
+	}
+	
+	// ======== 統計 ======== //
+	static boolean isActive() {
+		return enabled;
+	}
+	
+	/**
+	 * 記錄 viewModel 在目前的 command 中發出一次通知。
+	 * 
+	 * @param target 通知的對象，例如 property 名稱或 <code>editorForm.foo</code>
+	 */
+	static void record(Object viewModel, String target) {
+		String command = CURRENT_COMMAND.get();
+		CommandStats stats = getStats(viewModel.getClass().getName(), command == null ? NO_COMMAND : command);
+		stats.total.incrementAndGet();
+		
+		AtomicLong counter = stats.targets.get(target);
+		if (counter == null) {
+			counter = new AtomicLong();
+			AtomicLong exist = stats.targets.putIfAbsent(target, counter);
+			if (exist != null) { counter = exist; }
+		}
+		counter.incrementAndGet();
+	}
+	
+	private static CommandStats getStats(String viewModel, String command) {
+		ConcurrentHashMap<String, CommandStats> commands = STATS.get(viewModel);
+		if (commands == null) {
+			commands = new ConcurrentHashMap<String, CommandStats>();
+			ConcurrentHashMap<String, CommandStats> exist = STATS.putIfAbsent(viewModel, commands);
+			if (exist != null) { commands = exist; }
+		}
+		
+		CommandStats result = commands.get(command);
+		if (result == null) {
+			result = new CommandStats();
+			CommandStats exist = commands.putIfAbsent(command, result);
+			if (exist != null) { result = exist; }
+		}
+		return result;
+	}
+	
+	// ======== MBean ======== //
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+	
+	@Override
+	public void setEnabled(boolean value) {
+		enabled = value;
+	}
+	
+	@Override
+	public void reset() {
+		STATS.clear();
+	}
+	
+	@Override
+	public String getReport() {
+		final HashMap<String, Long> totals = new HashMap<String, Long>();
+		for (Map.Entry<String, ConcurrentHashMap<String, CommandStats>> entry : STATS.entrySet()) {
+			long total = 0;
+			for (CommandStats stats : entry.getValue().values()) {
+				total += stats.total.get();
+			}
+			totals.put(entry.getKey(), total);
+		}
+		
+		List<String> viewModels = new ArrayList<String>(totals.keySet());
+		Collections.sort(viewModels, new Comparator<String>() {
+			@Override
+			public int compare(String a, String b) {
+				return totals.get(b).compareTo(totals.get(a));
+			}
+		});
+		
+		StringBuffer result = new StringBuffer();
+		for (String viewModel : viewModels.subList(0, Math.min(REPORT_SIZE, viewModels.size()))) {
+			result.append(viewModel + " total=" + totals.get(viewModel) + "\n");
+			
+			for (Map.Entry<String, CommandStats> entry : STATS.get(viewModel).entrySet()) {
+				CommandStats stats = entry.getValue();
+				long invocations = stats.invocations.get();
+				result.append("  " + entry.getKey() + " invocations=" + invocations + " notifications=" + stats.total.get());
+				if (invocations > 0) {
+					result.append(String.format(" (%.1f/command)", (double)stats.total.get() / invocations));
+				}
+				result.append(" " + stats.targets + "\n");
+			}
+		}
+		return result.toString();
+	}
+	
+	private static class CommandStats {
+		private final AtomicLong invocations = new AtomicLong();
+		private final AtomicLong total = new AtomicLong();
+		private final ConcurrentHashMap<String, AtomicLong> targets = new ConcurrentHashMap<String, AtomicLong>();
+	}
+}
@@ -0,0 +1,17 @@
+package com.dtc.common.zk.viewmodel;
+
+/**
+ * {@link BindingProfiler} 的 JMX 介面。
+ */
+public interface BindingProfilerMBean {
+	boolean isEnabled();
+	
+	void setEnabled(boolean enabled);
+	
+	/**
+	 * @return notify change 總數最多的前 20 個 view model 與其 command 統計
+	 */
+	String getReport();
+	
+	void reset();
+}
@@ -12,7 +12,11 @@ public enum Constraint {
 	BIGGER(" > "),
 	NOT_BIGGER(" <= "),
 	NOT_SMALLER(" >= "),
-	LIKE(" like ");
+	LIKE(" like "),
+	/**
+	 * 包含某個字串，以 {@link TextIndex} 轉換成 id 集合，參見 {@link BaseEntityViewModel#getIndexedFields()}
+	 */
+	CONTAINS(" in ");
 	
 	private final String opString;
 	
@@ -0,0 +1,115 @@
+package com.dtc.common.zk.viewmodel;
+
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.zkoss.zk.ui.Desktop;
+import org.zkoss.zk.ui.Execution;
+import org.zkoss.zk.ui.Executions;
+import org.zkoss.zk.ui.event.Event;
+import org.zkoss.zk.ui.event.EventListener;
+import org.zkoss.zk.ui.util.DesktopCleanup;
+
+import com.dtc.boundary.Entity;
+
+/**
+ * application 層級、以 entity class 區分的資料異動通知。
+ * <p>
+ * {@link BaseMaintainViewModel} 存檔、刪除成功後會 {@link #publish(Class, Entity, ChangeType)}，
+ * 有開啟 {@link BaseEntityViewModel#isLiveRefresh()} 的 view model 則會透過 server push
+ * 在自己的 desktop 上收到異動的資料，不需要重新 search。
+ * 發出異動的 desktop 本身不會收到通知。
+ */
+public class EntityChangeBus {
+	public enum ChangeType { UPSERT, REMOVE }
+	
+	private static final String EVENT_NAME = "onEntityChange";
+	private static final ConcurrentHashMap<Class<?>, Set<Subscription>> SUBSCRIPTIONS = 
+		new ConcurrentHashMap<Class<?>, Set<Subscription>>();
+	
+	private EntityChangeBus() {}
+	
+	/**
+	 * 通知所有訂閱 entityClass 的 view model。
+	 * 每個 desktop 收到的是各自 {@link Entity#cloneEntity()} 的結果，不會共用同一個 instance。
+	 */
+	public static <T extends Entity> void publish(Class<T> entityClass, T data, ChangeType type) {
+		Set<Subscription> subscriptions = SUBSCRIPTIONS.get(entityClass);
+		if (subscriptions == null || subscriptions.isEmpty()) { return; }
+		
+		Execution execution = Executions.getCurrent();
+		Desktop origin = execution == null ? null : execution.getDesktop();
+		
+		for (Subscription subscription : subscriptions) {
+			if (subscription.desktop == origin) { continue; }
+			
+			if (!subscription.desktop.isAlive() || subscription.viewModel.get() == null) {
+				subscriptions.remove(subscription);
+				continue;
+			}
+			
+			try {
+				Executions.schedule(
+					subscription.desktop, subscription, 
+					new Event(EVENT_NAME, null, new Object[]{data.cloneEntity(), type})
+				);
+			} catch (Exception e) {	//desktop 已經失效
+				subscriptions.remove(subscription);
+			}
+		}
+	}
+	
+	/**
+	 * 必須在 ZK 的 execution 當中呼叫，會開啟目前 desktop 的 server push，
+	 * desktop 結束時自動取消訂閱。
+	 */
+	static void subscribe(Class<?> entityClass, BaseEntityViewModel<?> viewModel) {
+		Desktop desktop = Executions.getCurrent().getDesktop();
+		if (!desktop.isServerPushEnabled()) {
+			desktop.enableServerPush(true);
+		}
+		
+		Set<Subscription> subscriptions = SUBSCRIPTIONS.get(entityClass);
+		if (subscriptions == null) {
+			subscriptions = new CopyOnWriteArraySet<Subscription>();
+			Set<Subscription> exist = SUBSCRIPTIONS.putIfAbsent(entityClass, subscriptions);
+			if (exist != null) { subscriptions = exist; }
+		}
+		
+		final Set<Subscription> target = subscriptions;
+		final Subscription subscription = new Subscription(desktop, viewModel);
+		target.add(subscription);
+		
+		desktop.addListener(new DesktopCleanup() {
+			@Override
+			public void cleanup(Desktop desktop) throws Exception {
+				target.remove(subscription);
+			}
+		});
+	}
+	
+	/**
+	 * 只持有 view model 的 weak reference，避免 view model 因為訂閱而無法回收。
+	 */
+	private static class Subscription implements EventListener<Event> {
+		private final Desktop desktop;
+		private final WeakReference<BaseEntityViewModel<?>> viewModel;
+		
+		Subscription(Desktop desktop, BaseEntityViewModel<?> viewModel) {
+			this.desktop = desktop;
+			this.viewModel = new WeakReference<BaseEntityViewModel<?>>(viewModel);
+		}
+		
+		@Override
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		public void onEvent(Event event) throws Exception {
+			BaseEntityViewModel vm = viewModel.get();
+			if (vm == null) { return; }
+			
+			Object[] data = (Object[])event.getData();
+			vm.applyChange((Entity)data[0], (ChangeType)data[1]);
+		}
+	}
+}
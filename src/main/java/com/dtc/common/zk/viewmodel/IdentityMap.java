@@ -0,0 +1,165 @@
+package com.dtc.common.zk.viewmodel;
+
+import java.io.Serializable;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.zkoss.zk.ui.Session;
+import org.zkoss.zk.ui.Sessions;
+
+import com.dtc.boundary.Entity;
+
+/**
+ * session 範圍的 entity identity map，以 entity class、id、version 為 key，
+ * 讓同一個 session 內重複搜尋得到的同一筆資料共用同一個 instance。
+ * <p>
+ * value 為 weak reference，沒有任何頁面參考的 instance 會被 GC 回收，
+ * 對應的 entry 也會在下次存取時清除。
+ * session 被序列化時不會保留內容，反序列化後從空的 map 重新開始。
+ */
+public final class IdentityMap implements Serializable {
+	private static final long serialVersionUID = 1L;
+	private static final String ATTRIBUTE = IdentityMap.class.getName();
+	
+	private transient HashMap<Key, Entry> map;
+	private transient ReferenceQueue<Object> queue;
+	
+	private IdentityMap() {}
+	
+	/**
+	 * @return 目前 session 的 identity map，不在 ZK 的 execution 中時為 null
+	 */
+	public static IdentityMap current() {
+		Session session = Sessions.getCurrent();
+		if (session == null) { return null; }
+		
+		synchronized(session) {
+			IdentityMap result = (IdentityMap)session.getAttribute(ATTRIBUTE);
+			if (result == null) {
+				result = new IdentityMap();
+				session.setAttribute(ATTRIBUTE, result);
+			}
+			return result;
+		}
+	}
+	
+	/**
+	 * @return 如果已經有相同 entity class、id、version 的 instance 則回傳該 instance，
+	 * 	否則登記 data 並回傳 data。
+	 * 	id 或 version 為 null 時一律回傳 data：沒有 version 就無法分辨舊的 instance 是否已經過期。
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized <T> T canonicalize(Class<?> entityClass, Object id, Object version, T data) {
+		if (id == null || version == null || data == null) { return data; }
+		
+		expunge();
+		Key key = new Key(entityClass, id, version);
+		Entry entry = map.get(key);
+		Object exist = entry == null ? null : entry.get();
+		if (exist != null) { return (T)exist; }
+		
+		map.put(key, new Entry(key, data, queue));
+		return data;
+	}
+	
+	/**
+	 * 移除 entity class 與 id 對應的所有 version。
+	 */
+	public synchronized void evict(Class<?> entityClass, Object id) {
+		expunge();
+		for (Key key : map.keySet().toArray(new Key[map.size()])) {
+			if (key.entityClass == entityClass && key.id.equals(id)) {
+				map.remove(key);
+			}
+		}
+	}
+	
+	public synchronized void clear() {
+		expunge();
+		map.clear();
+	}
+	
+	public synchronized int size() {
+		expunge();
+		return map.size();
+	}
+	
+	private void expunge() {
+		if (map == null) {
+			map = new HashMap<Key, Entry>();
+			queue = new ReferenceQueue<Object>();
+			return;
+		}
+		
+		Object reference;
+		while ((reference = queue.poll()) != null) {
+			Entry entry = (Entry)reference;
+			//同一個 key 可能已經換成新的 entry
+			if (map.get(entry.key) == entry) {
+				map.remove(entry.key);
+			}
+		}
+	}
+	
+	/**
+	 * @return 將 list 中的每一筆資料換成 identity map 中的 instance（如果有的話）的新 list
+	 */
+	static <T extends Entity> List<T> canonicalize(BaseEntityViewModel<T> viewModel, List<T> list) {
+		IdentityMap identityMap = current();
+		if (identityMap == null) { return list; }
+		
+		String versionName = viewModel.getVersionName();
+		if (versionName == null) { return list; }
+		
+		ArrayList<T> result = new ArrayList<T>(list.size());
+		for (T data : list) {
+			if (data == null) {
+				result.add(data);
+				continue;
+			}
+			
+			Object version = BaseEntityViewModel.getProperty(data, versionName);
+			result.add(identityMap.canonicalize(viewModel.entityClass, viewModel.getEntityId(data), version, data));
+		}
+		return result;
+	}
+	
+	private static class Entry extends WeakReference<Object> {
+		private final Key key;
+		
+		Entry(Key key, Object referent, ReferenceQueue<Object> queue) {
+			super(referent, queue);
+			this.key = key;
+		}
+	}
+	
+	private static class Key {
+		private final Class<?> entityClass;
+		private final Object id;
+		private final Object version;
+		
+		Key(Class<?> entityClass, Object id, Object version) {
+			this.entityClass = entityClass;
+			this.id = id;
+			this.version = version;
+		}
+		
+		@Override
+		public int hashCode() {
+			int result = entityClass.hashCode() * 31 + id.hashCode();
+			return result * 31 + version.hashCode();
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) { return false; }
+			
+			Key other = (Key)obj;
+			return entityClass == other.entityClass && id.equals(other.id) &&
+				version.equals(other.version);
+		}
+	}
+}
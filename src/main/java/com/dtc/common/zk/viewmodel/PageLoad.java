@@ -0,0 +1,33 @@
+package com.dtc.common.zk.viewmodel;
+
+/**
+ * 頁面開啟時一項獨立的資料載入，例如 converter 的 data store 或下拉選單的 model。
+ * 以 {@link BaseEntityViewModel#registerLoad(PageLoad)} 註冊之後，
+ * 會在 AfterCompose 時與初始的 search 同時執行。
+ * 
+ * @param <R> 載入的結果
+ */
+public abstract class PageLoad<R> {
+	private final String[] properties;
+	
+	/**
+	 * @param properties {@link #apply(Object)} 之後要 notify change 的 view model property
+	 */
+	public PageLoad(String... properties) {
+		this.properties = properties;
+	}
+	
+	/**
+	 * 在背景 thread 上執行，不在 ZK 的 execution 中，不能操作 component 或 desktop。
+	 */
+	public abstract R load() throws Exception;
+	
+	/**
+	 * 在 event thread 上執行，將 {@link #load()} 的結果設定到 view model 或 converter。
+	 */
+	public abstract void apply(R result);
+	
+	String[] getProperties() {
+		return properties;
+	}
+}
@@ -0,0 +1,120 @@
+package com.dtc.common.zk.viewmodel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.dtc.common.zk.util.WorkerPool;
+
+/**
+ * view model 共用的背景預先載入機制：以 key 在 {@link WorkerPool} 上送出工作，之後在 event thread 上取回結果。
+ * <ul>
+ * 	<li>同時進行中的工作數量有上限，超過時不再送出</li>
+ * 	<li>以 {@link WorkerPool#trySubmit(Callable)} 送出，pool 忙碌時直接放棄，不會在 event thread 上執行</li>
+ * 	<li>取消時不會 interrupt 背景 thread（避免中斷進行中的 JDBC 操作），只是不再使用它的結果</li>
+ * 	<li>結果只能透過 {@link #take(Object, boolean)} 取得，被 {@link #cancel(Object)}、{@link #cancelAll()} 的結果一律捨棄</li>
+ * </ul>
+ * 背景工作不能修改 event thread 上共用的物件，應該自行讀取或複製一份獨立的資料。
+ * <p>
+ * 只能在 event thread 上使用，序列化時不保留（view model 中以 transient 宣告）。
+ */
+class Prefetcher<K, V> {
+	private final int limit;
+	private final Map<K, Future<V>> futures;
+	
+	/**
+	 * @param limit 同時進行中的工作數量上限
+	 * @param identity 是否以 instance 比對 key（例如以 entity 本身作為 key 時），否則以 equals() 比對
+	 */
+	Prefetcher(int limit, boolean identity) {
+		this.limit = limit;
+		this.futures = identity ? new IdentityHashMap<K, Future<V>>() : new HashMap<K, Future<V>>();
+	}
+	
+	boolean contains(K key) {
+		return futures.containsKey(key);
+	}
+	
+	/**
+	 * @return 是否有送出。key 已經在進行中、到達上限或 {@link WorkerPool} 的 queue 已滿時為 false
+	 */
+	boolean submit(K key, Callable<V> task) {
+		if (futures.containsKey(key)) { return false; }
+		
+		//清掉已經完成、但還沒被用到的，避免佔住上限
+		for (K done : new ArrayList<K>(futures.keySet())) {
+			if (futures.get(done).isDone()) {
+				futures.remove(done);
+			}
+		}
+		if (futures.size() >= limit) { return false; }
+		
+		Future<V> future = WorkerPool.trySubmit(task);
+		if (future == null) { return false; }
+		
+		futures.put(key, future);
+		return true;
+	}
+	
+	/**
+	 * @param wait 還沒完成時是否等待。false 的話會取消該工作並回傳 null
+	 * @return key 的結果，沒有送出、已經取消、還沒完成（wait 為 false）或失敗時為 null
+	 */
+	V take(K key, boolean wait) {
+		Future<V> future = futures.remove(key);
+		if (future == null || future.isCancelled()) { return null; }
+		
+		if (!wait && !future.isDone()) {
+			future.cancel(false);
+			return null;
+		}
+		
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			return null;	//背景載入失敗就由呼叫端自行處理
+		}
+	}
+	
+	/**
+	 * 取消 keys 以外的所有工作。
+	 */
+	void retain(Collection<K> keys) {
+		for (K key : new ArrayList<K>(futures.keySet())) {
+			if (!containsKey(keys, key)) {
+				cancel(key);
+			}
+		}
+	}
+	
+	void cancel(K key) {
+		Future<V> future = futures.remove(key);
+		if (future != null) {
+			future.cancel(false);
+		}
+	}
+	
+	void cancelAll() {
+		for (Future<V> future : futures.values()) {
+			future.cancel(false);
+		}
+		futures.clear();
+	}
+	
+	private boolean containsKey(Collection<K> keys, K key) {
+		if (!(futures instanceof IdentityHashMap)) { return keys.contains(key); }
+		
+		for (K candidate : keys) {
+			if (candidate == key) { return true; }
+		}
+		return false;
+	}
+}
@@ -0,0 +1,76 @@
+package com.dtc.common.zk.viewmodel;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * {@link BaseEntityViewModel} 在 projection 模式下，資料列表元件的一筆資料。
+ * <p>
+ * 第一個欄位固定是 entity 的 id，其餘欄位依照 {@link BaseEntityViewModel#getProjectionColumns()} 的順序。
+ * 同一次搜尋的所有 row 共用同一個欄位名稱陣列，每筆只保留欄位值，
+ * 在 ZUL 中以 <code>each['foo.bar']</code> 取值。
+ */
+public class ProjectionRow extends AbstractMap<String, Object> implements Serializable {
+	private static final long serialVersionUID = 2698513325340158263L;
+	
+	private final String[] columns;
+	private final Object[] values;
+	
+	ProjectionRow(String[] columns, Object[] values) {
+		this.columns = columns;
+		this.values = values;
+	}
+	
+	/**
+	 * @return entity 的 id
+	 */
+	public Object getId() {
+		return values[0];
+	}
+	
+	@Override
+	public Object get(Object key) {
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i].equals(key)) {
+				return values[i];
+			}
+		}
+		return null;
+	}
+	
+	@Override
+	public boolean containsKey(Object key) {
+		for (String column : columns) {
+			if (column.equals(key)) { return true; }
+		}
+		return false;
+	}
+	
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		LinkedHashSet<Entry<String, Object>> result = new LinkedHashSet<Entry<String, Object>>();
+		for (int i = 0; i < columns.length; i++) {
+			result.add(new SimpleImmutableEntry<String, Object>(columns[i], values[i]));
+		}
+		return result;
+	}
+	
+	/**
+	 * row 是不是同一筆資料只看 id。
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof ProjectionRow)) { return false; }
+		
+		Object id = getId();
+		return id == null ? this == o : id.equals(((ProjectionRow)o).getId());
+	}
+	
+	@Override
+	public int hashCode() {
+		Object id = getId();
+		return id == null ? System.identityHashCode(this) : id.hashCode();
+	}
+}
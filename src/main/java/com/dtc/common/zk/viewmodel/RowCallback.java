@@ -0,0 +1,11 @@
+package com.dtc.common.zk.viewmodel;
+
+/**
+ * 逐筆處理查詢結果，用於不需要把整個結果放進記憶體的情境，
+ * 例如 {@link BaseEntityViewModel#scrollData(String, java.util.Map, int, RowCallback)}。
+ * 
+ * @param <T> entity
+ */
+public interface RowCallback<T> {
+	void handle(T data) throws Exception;
+}
@@ -0,0 +1,174 @@
+package com.dtc.common.zk.viewmodel;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.zkoss.lang.Library;
+
+/**
+ * 限制同一個 node 上同時執行的搜尋數量，避免大量的搜尋耗盡 connection pool。
+ * 每個 tier（預設為 entity class 名稱，參見 {@link BaseEntityViewModel#getSearchTier()}）各自有一組 permit，
+ * 拿不到 permit 的搜尋會直接失敗，不會無限制地排隊。
+ * <p>
+ * 搜尋超過時間限制時會把該 tier 實際允許的同時搜尋數量（limit）減一（最少為 1），
+ * 在時間限制內完成的搜尋則讓 limit 逐步回到 permit 數量。
+ * 已經到達 limit 時，即使還有 permit，新的搜尋也會被拒絕（shed），讓變慢的資料庫有機會恢復。
+ * <p>
+ * 以 library property 設定：
+ * <ul>
+ * 	<li>{@value #PERMITS}：預設的 permit 數量，預設為 10</li>
+ * 	<li>{@value #PERMITS}<code>.[tier]</code>：特定 tier 的 permit 數量</li>
+ * 	<li>{@value #WAIT}：拿不到 permit 時最多等待幾毫秒，預設為 0（立刻失敗）</li>
+ * </ul>
+ */
+public class SearchBulkhead {
+	public static final String PERMITS = "com.dtc.common.zk.searchBulkhead.permits";
+	public static final String WAIT = "com.dtc.common.zk.searchBulkhead.wait";
+	
+	private static final int DEFAULT_PERMITS = 10;
+	private static final ConcurrentHashMap<String, SearchBulkhead> BULKHEADS = new ConcurrentHashMap<String, SearchBulkhead>();
+	
+	private final String tier;
+	private final int permits;
+	private final Semaphore semaphore;
+	private final AtomicInteger limit;
+	private final AtomicLong admitted = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong overrun = new AtomicLong();
+	private final AtomicLong shed = new AtomicLong();
+	private final AtomicLong maxElapsed = new AtomicLong();
+	
+	private SearchBulkhead(String tier, int permits) {
+		this.tier = tier;
+		this.permits = permits;
+		this.semaphore = new Semaphore(permits);
+		this.limit = new AtomicInteger(permits);
+	}
+	
+	public static SearchBulkhead get(String tier) {
+		SearchBulkhead result = BULKHEADS.get(tier);
+		if (result != null) { return result; }
+		
+		int permits = Library.getIntProperty(PERMITS + "." + tier, Library.getIntProperty(PERMITS, DEFAULT_PERMITS));
+		result = new SearchBulkhead(tier, permits);
+		SearchBulkhead exist = BULKHEADS.putIfAbsent(tier, result);
+		return exist == null ? result : exist;
+	}
+	
+	/**
+	 * @return 是否拿到 permit。拿到的話必須在搜尋結束後呼叫 {@link #release(long, int)}
+	 */
+	public boolean tryAcquire() {
+		boolean result;
+		try {
+			result = semaphore.tryAcquire(Library.getIntProperty(WAIT, 0), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			result = false;
+		}
+		
+		if (result && getActive() > limit.get()) {
+			semaphore.release();
+			shed.incrementAndGet();
+			result = false;
+		}
+		
+		(result ? admitted : rejected).incrementAndGet();
+		return result;
+	}
+	
+	/**
+	 * @param elapsed 搜尋實際花費的毫秒數
+	 * @param timeout 搜尋的時間限制（秒），小於等於 0 代表沒有限制
+	 */
+	public void release(long elapsed, int timeout) {
+		semaphore.release();
+		
+		if (timeout > 0 && elapsed > timeout * 1000L) {
+			overrun.incrementAndGet();
+			adjustLimit(-1);
+		} else {
+			adjustLimit(1);
+		}
+		long max = maxElapsed.get();
+		while (elapsed > max && !maxElapsed.compareAndSet(max, elapsed)) {
+			max = maxElapsed.get();
+		}
+	}
+	
+	private void adjustLimit(int delta) {
+		while (true) {
+			int current = limit.get();
+			int next = Math.max(1, Math.min(permits, current + delta));
+			if (next == current || limit.compareAndSet(current, next)) { return; }
+		}
+	}
+	
+	public String getTier() {
+		return tier;
+	}
+	
+	public int getPermits() {
+		return permits;
+	}
+	
+	/**
+	 * @return 目前正在執行的搜尋數量
+	 */
+	public int getActive() {
+		return permits - semaphore.availablePermits();
+	}
+	
+	public long getAdmitted() {
+		return admitted.get();
+	}
+	
+	public long getRejected() {
+		return rejected.get();
+	}
+	
+	/**
+	 * @return 超過時間限制的搜尋數量
+	 */
+	public long getOverrun() {
+		return overrun.get();
+	}
+	
+	/**
+	 * @return 目前允許的同時搜尋數量，介於 1 與 {@link #getPermits()} 之間
+	 */
+	public int getLimit() {
+		return limit.get();
+	}
+	
+	/**
+	 * @return 因為超過 limit 而被拒絕的搜尋數量，已經包含在 {@link #getRejected()} 之中
+	 */
+	public long getShed() {
+		return shed.get();
+	}
+	
+	public long getMaxElapsed() {
+		return maxElapsed.get();
+	}
+	
+	/**
+	 * @return 所有 tier 的統計
+	 */
+	public static String getReport() {
+		StringBuffer result = new StringBuffer();
+		for (SearchBulkhead bulkhead : BULKHEADS.values()) {
+			result.append(bulkhead + "\n");
+		}
+		return result.toString();
+	}
+	
+	@Override
+	public String toString() {
+		return tier + " active=" + getActive() + "/" + getLimit() + "/" + permits + " admitted=" + getAdmitted() + 
+			" rejected=" + getRejected() + " shed=" + getShed() + " overrun=" + getOverrun() + " maxElapsed=" + getMaxElapsed() + "ms";
+	}
+}
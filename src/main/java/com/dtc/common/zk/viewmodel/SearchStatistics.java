@@ -0,0 +1,180 @@
+package com.dtc.common.zk.viewmodel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.zkoss.lang.Library;
+
+/**
+ * 依照 entity class 與搜尋條件的組合（shape，也就是哪些欄位用哪些 {@link Constraint} 一起搜尋）
+ * 統計 {@link BaseEntityViewModel#search()} 的次數、耗時分布與結果筆數，
+ * 並依總耗時排序，建議可以建立的 composite index。
+ * <p>
+ * 統計一律使用 atomic 變數，不會有 lock。
+ * library property {@value #DISABLED} 設為 true 時不作統計。
+ */
+public class SearchStatistics {
+	public static final String DISABLED = "com.dtc.common.zk.searchStatistics.disabled";
+	
+	/** 區間條件（_from、_to 等）在 shape 中的名稱 */
+	static final String RANGE = "RANGE";
+	
+	private static final int BUCKET_COUNT = 32;
+	private static final ConcurrentHashMap<String, Shape> SHAPES = new ConcurrentHashMap<String, Shape>();
+	
+	private SearchStatistics() {}
+	
+	public static boolean isEnabled() {
+		return !"true".equals(Library.getProperty(DISABLED));
+	}
+	
+	/**
+	 * @param fields key 為欄位名稱、value 為比對條件（{@link Constraint} 的名稱或 {@value #RANGE}），依欄位名稱排序
+	 */
+	static void record(Class<?> entityClass, SortedMap<String, String> fields, long elapsed, int rows) {
+		String name = entityClass.getSimpleName() + fields;
+		Shape shape = SHAPES.get(name);
+		if (shape == null) {
+			shape = new Shape(entityClass.getSimpleName(), new LinkedHashMap<String, String>(fields));
+			Shape exist = SHAPES.putIfAbsent(name, shape);
+			if (exist != null) { shape = exist; }
+		}
+		shape.record(elapsed, rows);
+	}
+	
+	public static void reset() {
+		SHAPES.clear();
+	}
+	
+	/**
+	 * @return 依總耗時排序的 shape 統計，以及建議的 composite index
+	 */
+	public static String getReport() {
+		List<Shape> shapes = new ArrayList<Shape>(SHAPES.values());
+		Collections.sort(shapes, new Comparator<Shape>() {
+			@Override
+			public int compare(Shape a, Shape b) {
+				long diff = b.totalTime.get() - a.totalTime.get();
+				return diff > 0 ? 1 : diff < 0 ? -1 : 0;
+			}
+		});
+		
+		StringBuffer result = new StringBuffer();
+		LinkedHashMap<String, Long> indexes = new LinkedHashMap<String, Long>();
+		for (Shape shape : shapes) {
+			long count = shape.count.get();
+			if (count == 0) { continue; }
+			
+			result.append(shape.entity + " " + shape.fields + 
+				" count=" + count + 
+				" total=" + shape.totalTime.get() + "ms" +
+				" avg=" + shape.totalTime.get() / count + "ms" +
+				" p50=" + shape.percentile(0.5) + "ms" +
+				" p95=" + shape.percentile(0.95) + "ms" +
+				" p99=" + shape.percentile(0.99) + "ms" +
+				" avgRows=" + shape.totalRows.get() / count +
+				" maxRows=" + shape.maxRows.get() + "\n"
+			);
+			
+			String index = shape.suggestIndex();
+			if (index != null) {
+				Long time = indexes.get(index);
+				indexes.put(index, (time == null ? 0 : time) + shape.totalTime.get());
+			}
+		}
+		
+		if (!indexes.isEmpty()) {
+			result.append("\n建議的 index（依相關搜尋的總耗時排序）：\n");
+			for (Map.Entry<String, Long> entry : indexes.entrySet()) {	//shape 已經依總耗時排序
+				result.append("  " + entry.getKey() + " total=" + entry.getValue() + "ms\n");
+			}
+		}
+		return result.toString();
+	}
+	
+	private static class Shape {
+		private final String entity;
+		private final Map<String, String> fields;
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalTime = new AtomicLong();
+		private final AtomicLong totalRows = new AtomicLong();
+		private final AtomicLong maxRows = new AtomicLong();
+		//第 i 個 bucket 為耗時小於 2^i 毫秒（且不小於 2^(i-1)）的次數
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+		
+		Shape(String entity, Map<String, String> fields) {
+			this.entity = entity;
+			this.fields = fields;
+		}
+		
+		void record(long elapsed, int rows) {
+			count.incrementAndGet();
+			totalTime.addAndGet(elapsed);
+			totalRows.addAndGet(rows);
+			
+			long max = maxRows.get();
+			while (rows > max && !maxRows.compareAndSet(max, rows)) {
+				max = maxRows.get();
+			}
+			
+			int bucket = 64 - Long.numberOfLeadingZeros(Math.max(0, elapsed));
+			buckets.incrementAndGet(Math.min(bucket, BUCKET_COUNT - 1));
+		}
+		
+		/**
+		 * @return 百分位數所在 bucket 的上限（毫秒）
+		 */
+		long percentile(double ratio) {
+			long target = (long)Math.ceil(count.get() * ratio);
+			long sum = 0;
+			for (int i = 0; i < BUCKET_COUNT; i++) {
+				sum += buckets.get(i);
+				if (sum >= target) {
+					return 1L << i;
+				}
+			}
+			return 1L << (BUCKET_COUNT - 1);
+		}
+		
+		/**
+		 * 等於條件的欄位在前，接著是第一個區間或大小比較的欄位；
+		 * LIKE、CONTAINS、NOT_EQUAL 無法有效使用 index，所以不列入。
+		 * 
+		 * @return 建議的 index，沒有可用的欄位時為 null
+		 */
+		String suggestIndex() {
+			ArrayList<String> columns = new ArrayList<String>();
+			String range = null;
+			for (Map.Entry<String, String> entry : fields.entrySet()) {
+				String op = entry.getValue();
+				if (op.equals(Constraint.EQUAL.name())) {
+					columns.add(entry.getKey());
+				} else if (range == null && (op.equals(RANGE) || op.equals(Constraint.SMALLER.name()) ||
+					op.equals(Constraint.BIGGER.name()) || op.equals(Constraint.NOT_BIGGER.name()) ||
+					op.equals(Constraint.NOT_SMALLER.name()))) {
+					range = entry.getKey();
+				}
+			}
+			if (range != null) {
+				columns.add(range);
+			}
+			
+			if (columns.isEmpty()) { return null; }
+			
+			StringBuffer result = new StringBuffer(entity + "(");
+			for (int i = 0; i < columns.size(); i++) {
+				if (i > 0) { result.append(", "); }
+				result.append(columns.get(i));
+			}
+			return result.append(")").toString();
+		}
+	}
+}
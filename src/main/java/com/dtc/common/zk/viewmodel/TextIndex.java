@@ -0,0 +1,261 @@
+package com.dtc.common.zk.viewmodel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.zkoss.lang.Library;
+
+/**
+ * 某個 entity 的某個文字 field 在 JVM 內的 trigram 反向索引，
+ * 用來把「包含某個字串」的搜尋轉成 id 集合，取代資料庫的 <code>like '%x%'</code> 全表掃描。
+ * <p>
+ * 同一個 entity class 與 field 在整個 JVM 中只有一份，參見 {@link #get(Class, String)}。
+ * 比對不分大小寫，trigram 交集之後會再以原文確認，不會有誤判。
+ * 少於三個字的查詢則直接掃過原文。
+ * <p>
+ * 索引只會收到呼叫端主動告知的異動（{@link #put(Object, String)}、{@link #remove(Object)}），
+ * 其他管道的寫入必須以 {@link #invalidate()} 或 {@link #invalidate(Class)} 讓索引重建。
+ * <p>
+ * 建立索引分成兩步：先 {@link #beginBuild()}，再以之後讀取的資料 {@link #build(long, List)}。
+ * 這段期間的 {@link #put(Object, String)}、{@link #remove(Object)} 會先排隊，build 完再套用；
+ * 期間如果被 {@link #invalidate()}，這次 build 的結果會捨棄，由下一次搜尋重建。
+ * <p>
+ * <b>注意：</b>索引只存在於目前的 JVM，cluster 中其他 node 的存檔不會通知到這裡。
+ * 所以索引建立超過 {@value #TTL} 秒（預設 600 秒，0 代表永不過期）之後視為過期，
+ * {@link #isBuilt()} 變回 false，讓下一次搜尋重建。也就是說其他 node 的異動最晚在這段時間之後反映。
+ */
+public class TextIndex {
+	public static final String TTL = "com.dtc.common.zk.textIndex.ttl";
+	
+	private static final int GRAM = 3;
+	private static final int DEFAULT_TTL_SECONDS = 600;
+	private static final ConcurrentHashMap<String, TextIndex> INDEXES = new ConcurrentHashMap<String, TextIndex>();
+	
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final HashMap<String, Set<Object>> grams = new HashMap<String, Set<Object>>();
+	private final HashMap<Object, String> texts = new HashMap<Object, String>();
+	private final long ttl;
+	private volatile boolean built;
+	private volatile long builtAt;
+	//每次 invalidate 就加一，用來判斷 build 期間有沒有被 invalidate
+	private long generation;
+	//build 期間收到的異動，key 為 id、value 為文字（null 表示刪除）。不在 build 期間時為 null
+	private HashMap<Object, String> pending;
+	
+	private TextIndex() {
+		ttl = TimeUnit.SECONDS.toMillis(Library.getIntProperty(TTL, DEFAULT_TTL_SECONDS));
+	}
+	
+	public static TextIndex get(Class<?> entityClass, String field) {
+		String name = entityClass.getName() + "#" + field;
+		TextIndex result = INDEXES.get(name);
+		if (result != null) { return result; }
+		
+		result = new TextIndex();
+		TextIndex exist = INDEXES.putIfAbsent(name, result);
+		return exist == null ? result : exist;
+	}
+	
+	/**
+	 * 捨棄 entityClass 所有 field 的索引，參見 {@link #invalidate()}。
+	 */
+	public static void invalidate(Class<?> entityClass) {
+		String prefix = entityClass.getName() + "#";
+		for (String name : INDEXES.keySet()) {
+			if (name.startsWith(prefix)) {
+				INDEXES.get(name).invalidate();
+			}
+		}
+	}
+	
+	/**
+	 * 捨棄目前的內容，{@link #isBuilt()} 變回 false，由使用端在下一次搜尋時重建。
+	 * 進行中的 {@link #build(long, List)} 也會被捨棄。
+	 */
+	public void invalidate() {
+		lock.writeLock().lock();
+		try {
+			generation++;
+			pending = null;
+			built = false;
+			grams.clear();
+			texts.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * @return 是否已經建立過、而且還沒過期
+	 */
+	public boolean isBuilt() {
+		return built && (ttl <= 0 || System.currentTimeMillis() - builtAt < ttl);
+	}
+	
+	/**
+	 * 開始建立索引，之後的 {@link #put(Object, String)}、{@link #remove(Object)} 會排隊到 {@link #build(long, List)}。
+	 * 必須在讀取建立索引用的資料<b>之前</b>呼叫。
+	 * @return 交給 {@link #build(long, List)} 的代號
+	 */
+	public long beginBuild() {
+		lock.writeLock().lock();
+		try {
+			pending = new HashMap<Object, String>();
+			return generation;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * 以 rows 取代整個索引，每一筆的內容為 id 與文字，再套用 {@link #beginBuild()} 之後排隊的異動。
+	 * @param token {@link #beginBuild()} 的回傳值
+	 * @return 是否成功。{@link #beginBuild()} 之後被 {@link #invalidate()} 過的話為 false，索引維持未建立
+	 */
+	public boolean build(long token, List<Object[]> rows) {
+		lock.writeLock().lock();
+		try {
+			if (token != generation || pending == null) { return false; }
+			
+			grams.clear();
+			texts.clear();
+			for (Object[] row : rows) {
+				add(row[0], row[1] == null ? null : row[1].toString());
+			}
+			for (Map.Entry<Object, String> entry : pending.entrySet()) {
+				removeId(entry.getKey());
+				add(entry.getKey(), entry.getValue());
+			}
+			pending = null;
+			builtAt = System.currentTimeMillis();
+			built = true;
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * 新增或更新一筆資料。還沒建立、也不在建立中的時候不作任何事（建立時會從資料庫讀到）。
+	 */
+	public void put(Object id, String text) {
+		if (id == null) { return; }
+		
+		lock.writeLock().lock();
+		try {
+			if (pending != null) {
+				pending.put(id, text);
+			}
+			if (built) {
+				removeId(id);
+				add(id, text);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	public void remove(Object id) {
+		put(id, null);
+	}
+	
+	/**
+	 * @return 文字包含 query 的所有 id，索引還沒建立（或已經被 {@link #invalidate()}）時為 null
+	 */
+	public Set<Object> search(String query) {
+		String normalized = query.toLowerCase();
+		
+		lock.readLock().lock();
+		try {
+			if (!built) { return null; }
+			
+			Set<Object> candidates = texts.keySet();
+			if (normalized.length() >= GRAM) {
+				ArrayList<Set<Object>> sets = new ArrayList<Set<Object>>();
+				for (String gram : split(normalized)) {
+					Set<Object> ids = grams.get(gram);
+					if (ids == null) { return Collections.emptySet(); }
+					sets.add(ids);
+				}
+				
+				//從最小的集合開始交集
+				Collections.sort(sets, new Comparator<Set<Object>>() {
+					@Override
+					public int compare(Set<Object> a, Set<Object> b) {
+						return a.size() - b.size();
+					}
+				});
+				candidates = new HashSet<Object>(sets.get(0));
+				for (int i = 1; i < sets.size() && !candidates.isEmpty(); i++) {
+					candidates.retainAll(sets.get(i));
+				}
+			}
+			
+			HashSet<Object> result = new HashSet<Object>();
+			for (Object id : candidates) {
+				if (texts.get(id).contains(normalized)) {
+					result.add(id);
+				}
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return texts.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	private void add(Object id, String text) {
+		if (text == null) { return; }
+		
+		String normalized = text.toLowerCase();
+		texts.put(id, normalized);
+		for (String gram : split(normalized)) {
+			Set<Object> ids = grams.get(gram);
+			if (ids == null) {
+				ids = new HashSet<Object>();
+				grams.put(gram, ids);
+			}
+			ids.add(id);
+		}
+	}
+	
+	private void removeId(Object id) {
+		String text = texts.remove(id);
+		if (text == null) { return; }
+		
+		for (String gram : split(text)) {
+			Set<Object> ids = grams.get(gram);
+			if (ids == null) { continue; }
+			
+			ids.remove(id);
+			if (ids.isEmpty()) {
+				grams.remove(gram);
+			}
+		}
+	}
+	
+	private static List<String> split(String text) {
+		ArrayList<String> result = new ArrayList<String>();
+		for (int i = 0; i + GRAM <= text.length(); i++) {
+			result.add(text.substring(i, i + GRAM));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,41 @@
+package com.dtc.common.zk.converter;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class DicomDateToStringConverterTest {
+	@Test
+	public void lowerBoundIgnoresSeparators() {
+		assertEquals("20260308", DicomDateToStringConverter.toLowerBound("2026/03/08"));
+		assertEquals("20261231235959.5", DicomDateToStringConverter.toLowerBound("20261231235959.5"));
+	}
+	
+	@Test
+	public void upperBoundAddsOneToField() {
+		assertEquals("2027", DicomDateToStringConverter.toUpperBound("2026"));
+		assertEquals("202604", DicomDateToStringConverter.toUpperBound("202603"));
+		assertEquals("20260309", DicomDateToStringConverter.toUpperBound("2026/03/08"));
+		assertEquals("2026030813", DicomDateToStringConverter.toUpperBound("2026030812"));
+		assertEquals("202603081231", DicomDateToStringConverter.toUpperBound("202603081230"));
+		assertEquals("20260308123046", DicomDateToStringConverter.toUpperBound("20260308123045"));
+	}
+	
+	@Test
+	public void upperBoundRollsOver() {
+		assertEquals("202701", DicomDateToStringConverter.toUpperBound("202612"));
+		assertEquals("20270101", DicomDateToStringConverter.toUpperBound("20261231"));
+		assertEquals("20260301", DicomDateToStringConverter.toUpperBound("20260228"));
+		assertEquals("20240229", DicomDateToStringConverter.toUpperBound("20240228"));
+		assertEquals("2027010100", DicomDateToStringConverter.toUpperBound("2026123123"));
+		assertEquals("20270101000000", DicomDateToStringConverter.toUpperBound("20261231235959"));
+	}
+	
+	@Test
+	public void upperBoundOfOtherLengthIncrementsLastChar() {
+		assertEquals("20262", DicomDateToStringConverter.toUpperBound("20261"));
+		assertEquals("20261231235959.6", DicomDateToStringConverter.toUpperBound("20261231235959.5"));
+		assertEquals("202614", DicomDateToStringConverter.toUpperBound("202613"));
+		assertEquals("", DicomDateToStringConverter.toUpperBound(""));
+	}
+}
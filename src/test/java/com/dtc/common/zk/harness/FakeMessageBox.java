@@ -0,0 +1,106 @@
+package com.dtc.common.zk.harness;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.zkoss.zk.ui.event.Event;
+import org.zkoss.zk.ui.event.EventListener;
+import org.zkoss.zul.Messagebox;
+
+import com.dtc.common.zk.util.I18nMessages;
+import com.dtc.common.zk.util.MessageBoxResponder;
+
+/**
+ * 不顯示任何視窗，直接以指定的按鈕回應。
+ * <p>
+ * base view model 的錯誤（DAO exception 等）都是以訊息視窗回報、不會丟出 exception，
+ * 所以 error icon 的訊息與搜尋被 bulkhead 拒絕的「系統忙碌」訊息會記錄下來，
+ * 由 {@link #begin()}、{@link #end()} 讓 {@link LoadHarness} 把該次操作視為失敗。
+ * 與 {@link RecordingDispatcher} 一樣以 thread 為單位計算。
+ */
+public class FakeMessageBox implements MessageBoxResponder {
+	private final int button;
+	private final AtomicLong shown = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong busy = new AtomicLong();
+	//index 0 為 error 次數、1 為 busy 次數
+	private final ThreadLocal<int[]> current = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[2];
+		}
+	};
+	
+	/**
+	 * @param button 回應的按鈕，例如 {@link Messagebox#YES}
+	 */
+	public FakeMessageBox(int button) {
+		this.button = button;
+	}
+	
+	@Override
+	public int show(String message, String title, int buttons, String icon, EventListener<Event> listener) {
+		shown.incrementAndGet();
+		
+		if (I18nMessages.get("dtc.zk.error.search.busy").equals(message)) {
+			busy.incrementAndGet();
+			current.get()[1]++;
+		} else if (Messagebox.ERROR.equals(icon)) {
+			errors.incrementAndGet();
+			current.get()[0]++;
+		}
+		
+		if (listener != null) {
+			try {
+				listener.onEvent(new Event(toEventName(button)));
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		
+		return button;
+	}
+	
+	/**
+	 * 開始計算目前 thread 的一次操作。
+	 */
+	public void begin() {
+		int[] counts = current.get();
+		counts[0] = 0;
+		counts[1] = 0;
+	}
+	
+	/**
+	 * @return 目前 thread 從 {@link #begin()} 到現在是否出現過 error 訊息
+	 */
+	public boolean hasError() {
+		return current.get()[0] > 0;
+	}
+	
+	/**
+	 * @return 目前 thread 從 {@link #begin()} 到現在是否出現過「系統忙碌」訊息
+	 */
+	public boolean isBusy() {
+		return current.get()[1] > 0;
+	}
+	
+	public long getShown() {
+		return shown.get();
+	}
+	
+	public long getErrors() {
+		return errors.get();
+	}
+	
+	public long getBusy() {
+		return busy.get();
+	}
+	
+	private static String toEventName(int button) {
+		switch (button) {
+		case Messagebox.YES: return Messagebox.ON_YES;
+		case Messagebox.NO: return Messagebox.ON_NO;
+		case Messagebox.CANCEL: return Messagebox.ON_CANCEL;
+		default: return Messagebox.ON_OK;
+		}
+	}
+}
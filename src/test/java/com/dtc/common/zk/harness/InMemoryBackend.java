@@ -0,0 +1,45 @@
+package com.dtc.common.zk.harness;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 取代資料庫的記憶體資料集，給測試用 view model 的 queryData() / doSave() / doDelete() 使用。
+ * HQL 與參數一律忽略，查詢永遠回傳全部資料（各自的 list）。
+ * 
+ * @param <T> entity
+ */
+public class InMemoryBackend<T> {
+	private final CopyOnWriteArrayList<T> rows = new CopyOnWriteArrayList<T>();
+	private final AtomicLong queries = new AtomicLong();
+	
+	public InMemoryBackend(List<T> rows) {
+		this.rows.addAll(rows);
+	}
+	
+	public List<T> query() {
+		queries.incrementAndGet();
+		return new ArrayList<T>(rows);
+	}
+	
+	public List<T> query(String hql, Map<String, Object> params) {
+		return query();
+	}
+	
+	public void save(T data) {
+		if (!rows.contains(data)) {
+			rows.add(data);
+		}
+	}
+	
+	public void delete(T data) {
+		rows.remove(data);
+	}
+	
+	public long getQueries() {
+		return queries.get();
+	}
+}
@@ -0,0 +1,174 @@
+package com.dtc.common.zk.harness;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.zkoss.zul.Messagebox;
+
+import com.dtc.common.zk.util.MessageBoxUtil;
+import com.dtc.common.zk.viewmodel.BaseViewModel;
+
+/**
+ * 不需要 servlet container、直接操作 view model 的壓力測試工具。
+ * <p>
+ * 每個 view model 視為一個 desktop，同一個 desktop 的操作依序在同一個 thread 上執行（與 ZK 相同），
+ * 不同 desktop 則同時執行。notify change 由 {@link RecordingDispatcher} 計算、
+ * 訊息視窗由 {@link FakeMessageBox} 直接回應，資料則建議由 {@link InMemoryBackend} 提供。
+ * step 丟出 exception、或是過程中出現 error 訊息、「系統忙碌」訊息時都算是失敗，
+ * 後者另外計入 {@link LoadReport#getRejected(String)}。
+ * thread 數量超過 {@link com.dtc.common.zk.viewmodel.SearchBulkhead} 的 permit 數量時，
+ * 被拒絕的搜尋會出現在這裡，而不是被當成很快完成的搜尋。
+ * <pre>
+ * LoadReport report = new LoadHarness&lt;FooViewModel&gt;(factory)
+ * 	.step(MaintainSteps.&lt;FooViewModel&gt;search())
+ * 	.step(MaintainSteps.&lt;FooViewModel&gt;select())
+ * 	.step(MaintainSteps.&lt;FooViewModel&gt;save())
+ * 	.run(2000, 10, 16);
+ * System.out.println(report);
+ * </pre>
+ * 
+ * @param <VM> view model
+ */
+public class LoadHarness<VM extends BaseViewModel> {
+	/**
+	 * 建立一個已經完成 init / after compose 的 view model。
+	 */
+	public interface ViewModelFactory<VM> {
+		VM create() throws Exception;
+	}
+	
+	/**
+	 * 對 view model 的一次操作，通常就是呼叫一個 command。
+	 */
+	public interface Step<VM> {
+		String getName();
+		
+		void run(VM viewModel, Random random) throws Exception;
+	}
+	
+	private final ViewModelFactory<VM> factory;
+	private final List<Step<VM>> steps = new ArrayList<Step<VM>>();
+	private final RecordingDispatcher dispatcher = new RecordingDispatcher();
+	private FakeMessageBox messageBox = new FakeMessageBox(Messagebox.YES);
+	
+	public LoadHarness(ViewModelFactory<VM> factory) {
+		this.factory = factory;
+	}
+	
+	public LoadHarness<VM> step(Step<VM> step) {
+		steps.add(step);
+		return this;
+	}
+	
+	/**
+	 * @param button 確認視窗要回應的按鈕，預設為 {@link Messagebox#YES}
+	 */
+	public LoadHarness<VM> confirmWith(int button) {
+		messageBox = new FakeMessageBox(button);
+		return this;
+	}
+	
+	/**
+	 * @param desktops 同時存在的 desktop（view model）數量
+	 * @param iterations 每個 desktop 重複所有 step 的次數
+	 * @param threads 同時執行的 thread 數量
+	 */
+	public LoadReport run(int desktops, int iterations, int threads) throws Exception {
+		install();
+		try {
+			final List<VM> viewModels = new ArrayList<VM>(desktops);
+			for (int i = 0; i < desktops; i++) {
+				dispatcher.begin();
+				viewModels.add(factory.create());
+			}
+			
+			final LoadReport report = new LoadReport(steps);
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			long start = System.nanoTime();
+			
+			for (int i = 0; i < desktops; i++) {
+				final VM viewModel = viewModels.get(i);
+				final int seed = i;
+				final int times = iterations;
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						Random random = new Random(seed);
+						for (int n = 0; n < times; n++) {
+							for (Step<VM> step : steps) {
+								runStep(step, viewModel, random, report);
+							}
+						}
+					}
+				});
+			}
+			
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			report.setElapsedNanos(System.nanoTime() - start);
+			report.setRetainedBytesPerViewModel(measureRetainedBytes(Math.min(desktops, 1000)));
+			return report;
+		} finally {
+			uninstall();
+		}
+	}
+	
+	private void runStep(Step<VM> step, VM viewModel, Random random, LoadReport report) {
+		dispatcher.begin();
+		messageBox.begin();
+		long start = System.nanoTime();
+		boolean failed = false;
+		
+		try {
+			step.run(viewModel, random);
+		} catch (Exception e) {
+			failed = true;
+		}
+		
+		//view model 的錯誤是以訊息視窗回報，不會丟出 exception
+		boolean busy = messageBox.isBusy();
+		failed = failed || busy || messageBox.hasError();
+		report.record(step.getName(), System.nanoTime() - start, dispatcher.end(), failed, busy);
+	}
+	
+	/**
+	 * 建立 count 個 view model 並保留住，以 GC 之後的 heap 差異估計每個 view model 的大小。
+	 */
+	private long measureRetainedBytes(int count) throws Exception {
+		if (count == 0) { return 0; }
+		
+		long before = usedHeap();
+		List<VM> retained = new ArrayList<VM>(count);
+		for (int i = 0; i < count; i++) {
+			retained.add(factory.create());
+		}
+		long after = usedHeap();
+		
+		long result = (after - before) / retained.size();
+		retained.clear();
+		return result;
+	}
+	
+	private static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+	
+	private void install() {
+		BaseViewModel.setBindingDispatcher(dispatcher);
+		MessageBoxUtil.setResponder(messageBox);
+	}
+	
+	private void uninstall() {
+		BaseViewModel.setBindingDispatcher(null);
+		MessageBoxUtil.setResponder(null);
+	}
+}
@@ -0,0 +1,132 @@
+package com.dtc.common.zk.harness;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.zkoss.zul.Messagebox;
+
+import com.dtc.common.zk.util.ConfirmCallback;
+import com.dtc.common.zk.util.I18nMessages;
+import com.dtc.common.zk.util.MessageBoxUtil;
+import com.dtc.common.zk.viewmodel.BaseViewModel;
+
+public class LoadHarnessTest {
+	private static final int DESKTOPS = 8;
+	private static final int ITERATIONS = 5;
+	private static final int OPERATIONS = DESKTOPS * ITERATIONS;
+	
+	@Test
+	public void countNotificationsPerCommand() throws Exception {
+		LoadReport report = new LoadHarness<ProbeViewModel>(new ProbeFactory())
+			.step(new ProbeStep("notify") {
+				@Override
+				public void run(ProbeViewModel viewModel, Random random) {
+					viewModel.notifyTwice();
+				}
+			})
+			.run(DESKTOPS, ITERATIONS, 4);
+		
+		assertEquals(OPERATIONS, report.getOperations());
+		assertEquals(2.0, report.getNotificationsPerCommand("notify"), 0);
+		assertEquals(0, report.getFailures("notify"));
+	}
+	
+	@Test
+	public void countMessageBoxErrorsAsFailures() throws Exception {
+		LoadReport report = new LoadHarness<ProbeViewModel>(new ProbeFactory())
+			.step(new ProbeStep("error") {
+				@Override
+				public void run(ProbeViewModel viewModel, Random random) {
+					MessageBoxUtil.error("boom");
+				}
+			})
+			.step(new ProbeStep("busy") {
+				@Override
+				public void run(ProbeViewModel viewModel, Random random) {
+					MessageBoxUtil.info(I18nMessages.get("dtc.zk.error.search.busy"));
+				}
+			})
+			.step(new ProbeStep("info") {
+				@Override
+				public void run(ProbeViewModel viewModel, Random random) {
+					MessageBoxUtil.info("done");
+				}
+			})
+			.step(new ProbeStep("throw") {
+				@Override
+				public void run(ProbeViewModel viewModel, Random random) {
+					throw new IllegalStateException();
+				}
+			})
+			.run(DESKTOPS, ITERATIONS, 4);
+		
+		assertEquals(OPERATIONS, report.getFailures("error"));
+		assertEquals(0, report.getRejected("error"));
+		assertEquals(OPERATIONS, report.getFailures("busy"));
+		assertEquals(OPERATIONS, report.getRejected("busy"));
+		assertEquals(0, report.getFailures("info"));
+		assertEquals(OPERATIONS, report.getFailures("throw"));
+	}
+	
+	@Test
+	public void answerConfirmWithConfiguredButton() throws Exception {
+		final AtomicInteger yes = new AtomicInteger();
+		final AtomicInteger no = new AtomicInteger();
+		ProbeStep confirm = new ProbeStep("confirm") {
+			@Override
+			public void run(ProbeViewModel viewModel, Random random) {
+				MessageBoxUtil.confirm("sure?", new ConfirmCallback() {
+					private static final long serialVersionUID = 1L;
+					
+					@Override
+					public void onYes() {
+						yes.incrementAndGet();
+					}
+					
+					@Override
+					public void onNo() {
+						no.incrementAndGet();
+					}
+				});
+			}
+		};
+		
+		new LoadHarness<ProbeViewModel>(new ProbeFactory()).step(confirm).run(DESKTOPS, ITERATIONS, 4);
+		assertEquals(OPERATIONS, yes.get());
+		
+		new LoadHarness<ProbeViewModel>(new ProbeFactory()).step(confirm).confirmWith(Messagebox.NO).run(DESKTOPS, ITERATIONS, 4);
+		assertEquals(OPERATIONS, no.get());
+	}
+	
+	public static class ProbeViewModel extends BaseViewModel {
+		private static final long serialVersionUID = 1L;
+		
+		void notifyTwice() {
+			notifyChange("foo");
+			notifyChange("bar");
+		}
+	}
+	
+	private static class ProbeFactory implements LoadHarness.ViewModelFactory<ProbeViewModel> {
+		@Override
+		public ProbeViewModel create() {
+			return new ProbeViewModel();
+		}
+	}
+	
+	private static abstract class ProbeStep implements LoadHarness.Step<ProbeViewModel> {
+		private final String name;
+		
+		ProbeStep(String name) {
+			this.name = name;
+		}
+		
+		@Override
+		public String getName() {
+			return name;
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package com.dtc.common.zk.harness;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link LoadHarness} 的執行結果，以 step 為單位統計。
+ */
+public class LoadReport {
+	private final LinkedHashMap<String, StepStats> stats = new LinkedHashMap<String, StepStats>();
+	private long elapsedNanos;
+	private long retainedBytesPerViewModel;
+	
+	<VM> LoadReport(List<LoadHarness.Step<VM>> steps) {
+		for (LoadHarness.Step<VM> step : steps) {
+			stats.put(step.getName(), new StepStats());
+		}
+	}
+	
+	/**
+	 * @param failed 是否失敗（包含 rejected）
+	 * @param rejected 是否因為系統忙碌而被拒絕
+	 */
+	void record(String step, long nanos, int notifications, boolean failed, boolean rejected) {
+		StepStats stat = stats.get(step);
+		stat.count.incrementAndGet();
+		stat.nanos.addAndGet(nanos);
+		stat.notifications.addAndGet(notifications);
+		if (failed) {
+			stat.failures.incrementAndGet();
+		}
+		if (rejected) {
+			stat.rejected.incrementAndGet();
+		}
+	}
+	
+	public long getCount(String step) {
+		return stats.get(step).count.get();
+	}
+	
+	/**
+	 * @return 該 step 失敗的次數，包含 {@link #getRejected(String)}
+	 */
+	public long getFailures(String step) {
+		return stats.get(step).failures.get();
+	}
+	
+	/**
+	 * @return 該 step 因為系統忙碌（例如搜尋被 bulkhead 拒絕）而失敗的次數
+	 */
+	public long getRejected(String step) {
+		return stats.get(step).rejected.get();
+	}
+	
+	public long getOperations() {
+		long result = 0;
+		for (StepStats stat : stats.values()) {
+			result += stat.count.get();
+		}
+		return result;
+	}
+	
+	public double getOperationsPerSecond() {
+		return elapsedNanos == 0 ? 0 : getOperations() * 1e9 / elapsedNanos;
+	}
+	
+	/**
+	 * @return 該 step 平均每次的 notify change 次數
+	 */
+	public double getNotificationsPerCommand(String step) {
+		StepStats stat = stats.get(step);
+		return stat.count.get() == 0 ? 0 : (double)stat.notifications.get() / stat.count.get();
+	}
+	
+	public long getRetainedBytesPerViewModel() {
+		return retainedBytesPerViewModel;
+	}
+	
+	void setElapsedNanos(long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+	}
+	
+	void setRetainedBytesPerViewModel(long bytes) {
+		this.retainedBytesPerViewModel = bytes;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuffer result = new StringBuffer();
+		result.append(String.format("operations: %d, %.1f ops/s, retained heap: %d bytes/view model%n",
+			getOperations(), getOperationsPerSecond(), retainedBytesPerViewModel));
+		
+		for (Map.Entry<String, StepStats> entry : stats.entrySet()) {
+			StepStats stat = entry.getValue();
+			long count = Math.max(1, stat.count.get());
+			result.append(String.format("  %-12s count: %d, avg: %.1f us, notifications/command: %.2f, failures: %d (rejected: %d)%n",
+				entry.getKey(), stat.count.get(), stat.nanos.get() / 1e3 / count,
+				getNotificationsPerCommand(entry.getKey()), stat.failures.get(), stat.rejected.get()));
+		}
+		
+		return result.toString();
+	}
+	
+	private static class StepStats {
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong nanos = new AtomicLong();
+		private final AtomicLong notifications = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final AtomicLong rejected = new AtomicLong();
+	}
+}
@@ -0,0 +1,99 @@
+package com.dtc.common.zk.harness;
+
+import java.util.Random;
+
+import org.zkoss.zul.ListModelList;
+
+import com.dtc.boundary.Entity;
+import com.dtc.common.zk.viewmodel.BaseMaintainViewModel;
+
+/**
+ * {@link BaseMaintainViewModel} 常用的 {@link LoadHarness.Step}。
+ */
+public class MaintainSteps {
+	private MaintainSteps() {}
+	
+	public static <VM extends BaseMaintainViewModel<? extends Entity>> LoadHarness.Step<VM> search() {
+		return new LoadHarness.Step<VM>() {
+			@Override
+			public String getName() {
+				return "search";
+			}
+			
+			@Override
+			public void run(VM viewModel, Random random) {
+				viewModel.search();
+			}
+		};
+	}
+	
+	/**
+	 * 隨機選取資料列表中的一筆。
+	 */
+	public static <VM extends BaseMaintainViewModel<? extends Entity>> LoadHarness.Step<VM> select() {
+		return new LoadHarness.Step<VM>() {
+			@Override
+			public String getName() {
+				return "select";
+			}
+			
+			@Override
+			public void run(VM viewModel, Random random) {
+				selectRandom(viewModel.getListModel(), random);
+				viewModel.selectData();
+			}
+		};
+	}
+	
+	/**
+	 * 模擬在編輯區修改 field，value 為 null 時則以亂數字串代替。
+	 */
+	public static <VM extends BaseMaintainViewModel<? extends Entity>> LoadHarness.Step<VM> edit(final String field, final Object value) {
+		return new LoadHarness.Step<VM>() {
+			@Override
+			public String getName() {
+				return "edit";
+			}
+			
+			@Override
+			public void run(VM viewModel, Random random) {
+				viewModel.getEditorForm().setField(field, value != null ? value : Integer.toString(random.nextInt()));
+			}
+		};
+	}
+	
+	public static <VM extends BaseMaintainViewModel<? extends Entity>> LoadHarness.Step<VM> save() {
+		return new LoadHarness.Step<VM>() {
+			@Override
+			public String getName() {
+				return "save";
+			}
+			
+			@Override
+			public void run(VM viewModel, Random random) {
+				viewModel.save();
+			}
+		};
+	}
+	
+	public static <VM extends BaseMaintainViewModel<? extends Entity>> LoadHarness.Step<VM> cancel() {
+		return new LoadHarness.Step<VM>() {
+			@Override
+			public String getName() {
+				return "cancel";
+			}
+			
+			@Override
+			public void run(VM viewModel, Random random) {
+				viewModel.cancel();
+			}
+		};
+	}
+	
+	private static <T> void selectRandom(ListModelList<T> model, Random random) {
+		if (model.isEmpty()) { return; }
+		
+		model.clearSelection();
+		model.addToSelection(model.get(random.nextInt(model.size())));
+	}
+}
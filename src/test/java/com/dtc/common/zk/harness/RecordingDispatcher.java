@@ -0,0 +1,60 @@
+package com.dtc.common.zk.harness;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.zkoss.bind.Binder;
+
+import com.dtc.common.zk.viewmodel.BindingDispatcher;
+
+/**
+ * 不交給 ZK，只計算 notify change / command 的次數。
+ * 以 thread 為單位計算，所以同一個 desktop 的操作必須在同一個 thread 上完成。
+ */
+public class RecordingDispatcher implements BindingDispatcher {
+	private final AtomicLong total = new AtomicLong();
+	private final ThreadLocal<int[]> current = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[1];
+		}
+	};
+	
+	@Override
+	public void postNotifyChange(Object bean, String property) {
+		count();
+	}
+	
+	@Override
+	public void postCommand(Binder binder, String command, Map<String, Object> params) {
+		count();
+	}
+	
+	@Override
+	public void postGlobalCommand(String command, Map<String, Object> params) {
+		count();
+	}
+	
+	/**
+	 * 開始計算目前 thread 的一次操作。
+	 */
+	public void begin() {
+		current.get()[0] = 0;
+	}
+	
+	/**
+	 * @return 目前 thread 從 {@link #begin()} 到現在的次數
+	 */
+	public int end() {
+		return current.get()[0];
+	}
+	
+	public long getTotal() {
+		return total.get();
+	}
+	
+	private void count() {
+		current.get()[0]++;
+		total.incrementAndGet();
+	}
+}